@@ -8,9 +8,16 @@ public class Ast {
     public static class Ident {
 
         public final String val;
+        // the symbol of val, identifiers with the same name share it
+        public final Symbol sym;
 
         public Ident(String val) {
-            this.val = val;
+            this(Symbols.SHARED.symbol(val));
+        }
+
+        public Ident(Symbol sym) {
+            this.sym = sym;
+            this.val = sym.name;
         }
     }
 
@@ -914,6 +921,26 @@ public class Ast {
     public static interface Declaration extends Visitable {
     }
 
+    // a declaration that could not be parsed, the parse error and the tokens
+    // that were skipped. Only created by a Parser in recovery mode
+    public static class ErrorDeclaration implements Declaration {
+
+        public final ParseException error;
+        public final List<Token> tokens;
+
+        public ErrorDeclaration(ParseException error, List<Token> tokens) {
+            this.error = error;
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void accept(Visitor visitor) {
+            for (Token token : tokens)
+                visitor.visit(token);
+            visitor.visit(this);
+        }
+    }
+
     public static class TypeDeclaration implements Declaration {
 
         public final Ident name;
@@ -1082,20 +1109,67 @@ public class Ast {
         }
     }
 
+    // a procedure or function body that was skipped by a parser in skeleton mode,
+    // it is parsed on the first call to resolve, a syntax error in the body
+    // is thrown from there. It is not a Block, the parsed Block is the result
+    // of resolve
+    public static abstract class LazyBlock implements Visitable {
+
+        private Block block;
+
+        protected abstract Block materialize();
+
+        public synchronized boolean isResolved() {
+            return block != null;
+        }
+
+        public synchronized Block resolve() {
+            if (block == null) {
+                block = materialize();
+            }
+            return block;
+        }
+
+        @Override
+        public void accept(Visitor visitor) {
+            resolve().accept(visitor);
+        }
+    }
+
     public static class FunctionDefinition implements Declaration {
 
         public final FunctionHeading functionheading;
-        public final Block block;
+        // one of the two is set, lazyBlock if the body was skipped in
+        // skeleton mode. Read the body with getBlock
+        private final Block block;
+        private final LazyBlock lazyBlock;
 
         public FunctionDefinition(FunctionHeading functionheading, Block block) {
             this.functionheading = functionheading;
             this.block = block;
+            this.lazyBlock = null;
+        }
+
+        public FunctionDefinition(FunctionHeading functionheading, LazyBlock lazyBlock) {
+            this.functionheading = functionheading;
+            this.block = null;
+            this.lazyBlock = lazyBlock;
+        }
+
+        // the body, a skipped body is parsed on the first call
+        public Block getBlock() {
+            return block != null ? block : lazyBlock.resolve();
+        }
+
+        // the skipped body, null if the body was parsed with the declaration
+        public LazyBlock getLazyBlock() {
+            return lazyBlock;
         }
 
         @Override
         public void accept(Visitor visitor) {
             visitor.visit(functionheading);
-            visitor.visit(block);
+            visitor.visit(getBlock());
             visitor.visit(this);
         }
     }
@@ -1103,17 +1177,37 @@ public class Ast {
     public static class ProcedureDefinition implements Declaration {
 
         public final ProcedureHeading procedureheading;
-        public final Block block;
+        // one of the two is set, lazyBlock if the body was skipped in
+        // skeleton mode. Read the body with getBlock
+        private final Block block;
+        private final LazyBlock lazyBlock;
 
         public ProcedureDefinition(ProcedureHeading procedureheading, Block block) {
             this.procedureheading = procedureheading;
             this.block = block;
+            this.lazyBlock = null;
+        }
+
+        public ProcedureDefinition(ProcedureHeading procedureheading, LazyBlock lazyBlock) {
+            this.procedureheading = procedureheading;
+            this.block = null;
+            this.lazyBlock = lazyBlock;
+        }
+
+        // the body, a skipped body is parsed on the first call
+        public Block getBlock() {
+            return block != null ? block : lazyBlock.resolve();
+        }
+
+        // the skipped body, null if the body was parsed with the declaration
+        public LazyBlock getLazyBlock() {
+            return lazyBlock;
         }
 
         @Override
         public void accept(Visitor visitor) {
             visitor.visit(procedureheading);
-            visitor.visit(block);
+            visitor.visit(getBlock());
             visitor.visit(this);
         }
     }
@@ -1276,7 +1370,7 @@ public class Ast {
         public String toString() {
             StringBuilder ret = new StringBuilder();
             for (Token t : tokens) {
-                ret.append(t.str + " ");
+                ret.append(t.str() + " ");
             }
             return ret.toString();
         }
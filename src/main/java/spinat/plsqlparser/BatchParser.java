@@ -0,0 +1,156 @@
+package spinat.plsqlparser;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// parses many files with package specs and bodies on an executor,
+// the largest files are started first so that they do not finish last,
+// each result is given to the listener as soon as the file is done
+public class BatchParser {
+
+    public static final String[] EXTENSIONS = {"pks", "pkb", "sql"};
+
+    // the units of one file or the error why the file could not be parsed
+    public static class Result {
+
+        public final File file;
+        public final List<Ast.PackageSpec> specs;
+        public final List<Ast.PackageBody> bodies;
+        public final Throwable error;
+
+        Result(File file, List<Ast.PackageSpec> specs, List<Ast.PackageBody> bodies, Throwable error) {
+            this.file = file;
+            this.specs = specs;
+            this.bodies = bodies;
+            this.error = error;
+        }
+
+        public boolean isOk() {
+            return error == null;
+        }
+    }
+
+    public interface Listener {
+
+        // called on the worker threads, so it must be thread safe
+        void done(Result result);
+    }
+
+    private final ExecutorService executor;
+    private final Charset charset;
+    private final Parser parser = new Parser();
+
+    public BatchParser(ExecutorService executor) {
+        this(executor, Charset.defaultCharset());
+    }
+
+    public BatchParser(ExecutorService executor, Charset charset) {
+        this.executor = executor;
+        this.charset = charset;
+    }
+
+    // the files with one of the EXTENSIONS below dir
+    public static List<File> findFiles(File dir) {
+        return new ArrayList<File>(FileUtils.listFiles(dir, EXTENSIONS, true));
+    }
+
+    public int parse(File dir, Listener listener) throws InterruptedException {
+        return parse(findFiles(dir), listener);
+    }
+
+    // parse all files and wait until they are done, a file that can not be
+    // loaded or parsed is reported as a Result with an error.
+    // returns the number of files with errors
+    public int parse(List<File> files, final Listener listener) throws InterruptedException {
+        ArrayList<File> l = new ArrayList<File>(files);
+        final HashMap<File, Long> sizes = new HashMap<File, Long>();
+        for (File f : l) {
+            sizes.put(f, f.length());
+        }
+        Collections.sort(l, new Comparator<File>() {
+
+            @Override
+            public int compare(File a, File b) {
+                long la = sizes.get(a);
+                long lb = sizes.get(b);
+                return la > lb ? -1 : la < lb ? 1 : 0;
+            }
+        });
+        ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(l.size());
+        for (final File f : l) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+                    Result r = parseFile(f);
+                    listener.done(r);
+                    return r.isOk();
+                }
+            }));
+        }
+        int errors = 0;
+        RuntimeException listenerError = null;
+        for (Future<Boolean> f : futures) {
+            try {
+                if (!f.get()) {
+                    errors++;
+                }
+            } catch (ExecutionException e) {
+                // parse errors are in the result, this came from the listener
+                if (listenerError == null) {
+                    listenerError = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (listenerError != null) {
+            throw listenerError;
+        }
+        return errors;
+    }
+
+    // parse the create package and create package body statements in the file,
+    // they may be separated by a slash
+    public Result parseFile(File f) {
+        List<Ast.PackageSpec> specs = new ArrayList<Ast.PackageSpec>();
+        List<Ast.PackageBody> bodies = new ArrayList<Ast.PackageBody>();
+        try {
+            Seq s = PLSQLParserUtils.scan(Util.mapFile(f.getPath(), charset));
+            while (s.head().ttype != TokenType.TheEnd) {
+                Res<Ast.PackageBody> rb = parser.pCRPackageBody.pa(s);
+                if (rb != null) {
+                    bodies.add(rb.v);
+                    s = rb.next;
+                } else {
+                    Res<Ast.PackageSpec> rs = parser.pCRPackage.pa(s);
+                    if (rs == null) {
+                        throw new ParseException("expecting create package or create package body", s);
+                    }
+                    specs.add(rs.v);
+                    s = rs.next;
+                }
+                if (s.head().ttype == TokenType.Div) {
+                    s = s.tail();
+                }
+            }
+            return new Result(f, specs, bodies, null);
+        } catch (Exception e) {
+            return new Result(f, specs, bodies, e);
+        } catch (StackOverflowError e) {
+            // deeply nested input, only this file is lost
+            return new Result(f, specs, bodies, e);
+        }
+    }
+}
@@ -1,10 +1,48 @@
 package spinat.plsqlparser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
 
 public class Combinator {
 
+    // the parsers for tokens and keywords, they do not depend on other
+    // parsers so the same instance serves all grammars
+    private final Map<List<Object>, Pa<String>> interned = new HashMap<List<Object>, Pa<String>>();
+
+    private Pa<String> interned(List<Object> key) {
+        synchronized (this.interned) {
+            return this.interned.get(key);
+        }
+    }
+
+    private Pa<String> intern(List<Object> key, Pa<String> p) {
+        synchronized (this.interned) {
+            Pa<String> q = this.interned.get(key);
+            if (q != null) {
+                return q;
+            }
+            this.interned.put(key, p);
+            return p;
+        }
+    }
+
+    // parse p at s, it must succeed. This is mustp(p, errm).pa(s)
+    // without creating a parser
+    public <X> Res<X> mustpa(Pa<X> p, Seq s, String errm) {
+        Res<X> r = p.pa(s);
+        if (r == null) {
+            throw new ParseException(errm, s);
+        }
+        return r;
+    }
+
     public <X> Pa<X> mustp(final Pa<X> p, final String errm) {
 
         return new Pa<X>() {
@@ -22,6 +60,11 @@ public class Combinator {
                     return r;
                 }
             }
+
+            @Override
+            public First first() {
+                return p.first();
+            }
         };
     }
 
@@ -44,6 +87,11 @@ public class Combinator {
                 return r2;
             }
 
+            @Override
+            public First first() {
+                return p1.first();
+            }
+
         };
     }
 
@@ -69,6 +117,11 @@ public class Combinator {
                 }
 
             }
+
+            @Override
+            public First first() {
+                return p1.first().then(p2.first());
+            }
         };
     }
 
@@ -89,6 +142,11 @@ public class Combinator {
                     return r;
                 }
             }
+
+            @Override
+            public First first() {
+                return p.first().orEmpty();
+            }
         };
     }
 
@@ -108,25 +166,43 @@ public class Combinator {
                     return new Res<Boolean>(true, r.next);
                 }
             }
+
+            @Override
+            public First first() {
+                return p.first().orEmpty();
+            }
         };
     }
 
     public Pa<String> token(final TokenType tt) {
-        return new Pa<String>() {
+        List<Object> key = Arrays.<Object>asList("token", tt);
+        Pa<String> p = interned(key);
+        if (p != null) {
+            return p;
+        }
+        return intern(key, new Pa<String>() {
 
             public String toString() {
                 return "token(" + tt + ")";
             }
 
+            final First first = First.of(tt);
+
             @Override
             public Res<String> par(Seq s) {
                 if (s.head().ttype == tt) {
-                    return new Res<String>(s.head().str, s.tail());
+                    return s.headString();
                 } else {
+                    s.fail(first);
                     return null;
                 }
             }
-        };
+
+            @Override
+            public First first() {
+                return first;
+            }
+        });
     }
 
     public final Pa<String> pPOpen = token(TokenType.LParen);
@@ -142,14 +218,53 @@ public class Combinator {
     public final Pa<String> pLabelStart = token(TokenType.LabelStart);
     public final Pa<String> pLabelEnd = token(TokenType.LabelEnd);
 
+    // a keyword, compared by keyword id if it is in Keywords,
+    // else by the identity of its symbol
     public Pa<String> forkw(final String kw) {
-        return new Pa<String>() {
+        List<Object> key = Arrays.<Object>asList("forkw", kw);
+        Pa<String> p = interned(key);
+        if (p != null) {
+            return p;
+        }
+        final int id = Keywords.lookup(kw);
+        if (id == Keywords.NONE) {
+            final Symbol sym = Symbols.SHARED.lookup(kw, 0, kw.length(), true);
+            return intern(key, new Pa<String>() {
+
+                final First first = First.of(TokenType.Ident);
+
+                @Override
+                public Res<String> par(Seq s) {
+                    Token t = s.head();
+                    if (t.ttype == TokenType.Ident && t.sym == sym) {
+                        return s.headString();
+                    } else {
+                        s.fail(first);
+                        return null;
+                    }
+                }
+
+                @Override
+                public String toString() {
+                    return "forkw(" + kw + ")";
+                }
+
+                @Override
+                public First first() {
+                    return first;
+                }
+            });
+        }
+        return intern(key, new Pa<String>() {
+
+            final First first = First.keyword(id);
 
             @Override
             public Res<String> par(Seq s) {
-                if (s.head().ttype == TokenType.Ident && s.head().str.equalsIgnoreCase(kw)) {
-                    return new Res<String>(s.head().str, s.tail());
+                if (s.head().kw == id) {
+                    return s.headString();
                 } else {
+                    s.fail(first);
                     return null;
                 }
             }
@@ -158,22 +273,30 @@ public class Combinator {
             public String toString() {
                 return "forkw(" + kw + ")";
             }
-        };
+
+            @Override
+            public First first() {
+                return first;
+            }
+        });
     }
 
     public Pa<String> forkw2(final String kw1, final String kw2) {
+        List<Object> key = Arrays.<Object>asList("forkw2", kw1, kw2);
+        Pa<String> p = interned(key);
+        if (p != null) {
+            return p;
+        }
         final String x = kw1 + "/" + kw2;
-        return new Pa<String>() {
+        final Pa<String> p1 = forkw(kw1);
+        final Pa<String> p2 = forkw(kw2);
+        return intern(key, new Pa<String>() {
 
             @Override
             public Res<String> par(Seq s) {
-                if (s.head().ttype == TokenType.Ident && s.head().str.equalsIgnoreCase(kw1)) {
-                    Token t = s.tail().head();
-                    if (t.ttype == TokenType.Ident && t.str.equalsIgnoreCase(kw2)) {
-                        return new Res<String>(x, s.tail().tail());
-                    } else {
-                        return null;
-                    }
+                Res<String> r1 = p1.pa(s);
+                if (r1 != null && p2.pa(r1.next) != null) {
+                    return new Res<String>(x, r1.next.tail());
                 } else {
                     return null;
                 }
@@ -182,7 +305,12 @@ public class Combinator {
             public String toString() {
                 return "forkw2(" + x + ")";
             }
-        };
+
+            @Override
+            public First first() {
+                return p1.first();
+            }
+        });
     }
 
     public <X> Pa<List<X>> many(final Pa<X> pa) {
@@ -200,6 +328,11 @@ public class Combinator {
                     next = r.next;
                 }
             }
+
+            @Override
+            public First first() {
+                return pa.first().orEmpty();
+            }
         };
     }
 
@@ -224,6 +357,7 @@ public class Combinator {
                     if (rr2 == null) {
                         throw new ParseException("expecteing one more thing", rr.next);
                     }
+                    l.add(rr2.v);
                     s = rr2.next;
                 }
             }
@@ -231,6 +365,11 @@ public class Combinator {
             public String toString() {
                 return "sep(" + pa + "," + pasep + ")";
             }
+
+            @Override
+            public First first() {
+                return pa.first().orEmpty();
+            }
         };
     }
 
@@ -250,6 +389,11 @@ public class Combinator {
             public String toString() {
                 return "sep1(" + pa + "," + pasep + ")";
             }
+
+            @Override
+            public First first() {
+                return pa.first();
+            }
         };
 
     }
@@ -288,6 +432,11 @@ public class Combinator {
                 }
                 return new Res<T3<X, Y, Z>>(new T3<X, Y, Z>(rx.v, ry.v, rz.v), rz.next);
             }
+
+            @Override
+            public First first() {
+                return px.first().then(py.first()).then(pz.first());
+            }
         };
     }
 
@@ -313,31 +462,216 @@ public class Combinator {
                 }
                 return new Res<T4<A, B, C, D>>(new T4<A, B, C, D>(rx.v, ry.v, rz.v, ru.v), ru.next);
             }
+
+            @Override
+            public First first() {
+                return px.first().then(py.first()).then(pz.first()).then(pu.first());
+            }
         };
     }
 
-    public <X> Pa<X> orn(final Pa[] pas) {
+    // the alternatives of an orn or switchOn with their First sets.
+    // The sets are computed on the first parse, when all parsers exist
+    static final class Choice {
+
+        final String kind;
+        final Pa<?>[] pas;
+        private volatile First[] firsts;
+        // the union of the known sets, reported when no alternative matches
+        private volatile First expected;
+
+        Choice(String kind, Pa<?>[] pas) {
+            this.kind = kind;
+            this.pas = pas;
+        }
+
+        First[] firsts() {
+            First[] f = this.firsts;
+            if (f == null) {
+                f = new First[pas.length];
+                First e = null;
+                for (int i = 0; i < pas.length; i++) {
+                    f[i] = pas[i].first();
+                    if (!f[i].isAny()) {
+                        e = e == null ? f[i] : e.union(f[i]);
+                    }
+                }
+                this.expected = e;
+                this.firsts = f;
+            }
+            return f;
+        }
+
+        // the alternatives did not match at s
+        void fail(Seq s) {
+            firsts();
+            if (this.expected != null) {
+                s.fail(this.expected);
+            }
+        }
+
+        First first() {
+            First[] f = firsts();
+            First u = f[0];
+            for (int i = 1; i < f.length; i++) {
+                u = u.union(f[i]);
+            }
+            return u;
+        }
+
+        // the alternatives that can not be told apart by their first token
+        List<String> ambiguities() {
+            List<String> res = new ArrayList<String>();
+            First[] f = firsts();
+            for (int i = 0; i < f.length; i++) {
+                for (int j = i + 1; j < f.length; j++) {
+                    List<String> o = f[i].overlap(f[j]);
+                    if (!o.isEmpty()) {
+                        res.add(kind + " alternatives " + pas[i] + " and " + pas[j] + " overlap on " + o);
+                    }
+                }
+            }
+            return res;
+        }
+    }
+
+    // the choices created by this combinator, for the ambiguity report.
+    // Weak keys, the choices of a parser that is gone are dropped
+    private final Map<Choice, Boolean> choices = Collections.synchronizedMap(new WeakHashMap<Choice, Boolean>());
+
+    private Choice choice(String kind, Pa<?>[] pas) {
         if (pas.length == 0) {
-            throw new RuntimeException("empty array for orn");
+            throw new RuntimeException("empty array for " + kind);
         }
+        Choice ch = new Choice(kind, pas);
+        this.choices.put(ch, Boolean.TRUE);
+        return ch;
+    }
+
+    // the alternatives of the choices of this combinator that still need
+    // backtracking because they can start with the same token
+    public List<String> ambiguities() {
+        List<Choice> l;
+        synchronized (this.choices) {
+            l = new ArrayList<Choice>(this.choices.keySet());
+        }
+        Set<String> res = new TreeSet<String>();
+        for (Choice ch : l) {
+            res.addAll(ch.ambiguities());
+        }
+        return new ArrayList<String>(res);
+    }
+
+    // the first alternative that succeeds, the alternatives that can not
+    // start at the current token are skipped
+    public <X> Pa<X> orn(final Pa[] pas) {
+        final Choice ch = choice("orn", pas);
         return new Pa<X>() {
 
             @Override
             public Res<X> par(Seq s) {
-                for (Pa p : pas) {
+                First[] f = ch.firsts();
+                Token t = s.head();
+                for (int i = 0; i < pas.length; i++) {
+                    if (!f[i].canStart(t)) {
+                        continue;
+                    }
                     @SuppressWarnings("unchecked")
-                    Pa<X> p2 = (Pa<X>) p;
+                    Pa<X> p2 = (Pa<X>) pas[i];
                     Res<X> r = p2.pa(s);
                     if (r != null) {
                         return r;
                     }
                 }
+                ch.fail(s);
                 return null;
             }
+
+            @Override
+            public First first() {
+                return ch.first();
+            }
+        };
+    }
+
+    // the alternative that can start at the current token, there is no
+    // backtracking to the others. The First sets must be known and disjoint,
+    // this is checked on the first parse
+    public <X> Pa<X> switchOn(final Pa<?>[] pas) {
+        final Choice ch = choice("switchOn", pas);
+        return new Pa<X>() {
+            private volatile boolean checked = false;
+
+            @Override
+            public Res<X> par(Seq s) {
+                if (!checked) {
+                    List<String> l = ch.ambiguities();
+                    if (!l.isEmpty()) {
+                        throw new RuntimeException(l.get(0));
+                    }
+                    checked = true;
+                }
+                First[] f = ch.firsts();
+                Token t = s.head();
+                for (int i = 0; i < pas.length; i++) {
+                    if (f[i].canStart(t)) {
+                        @SuppressWarnings("unchecked")
+                        Pa<X> p2 = (Pa<X>) pas[i];
+                        return p2.pa(s);
+                    }
+                }
+                ch.fail(s);
+                return null;
+            }
+
+            @Override
+            public First first() {
+                return ch.first();
+            }
+
+            public String toString() {
+                return "switchOn" + Arrays.asList(pas);
+            }
         };
     }
 
     public <X> Pa<X> or2(Pa<X> p1, Pa<X> p2) {
         return orn(new Pa[]{p1, p2});
     }
+
+    // parse p at most once per position, the result is remembered in the table
+    // under the given name. If the table is not enabled this is just p.
+    // A ParseException thrown by p is not remembered.
+    public <X> Pa<X> memo(final Memo table, final String name, final Pa<X> p) {
+        final int id = table.register(name);
+        return new Pa<X>() {
+
+            public String toString() {
+                return "memo(" + name + ")";
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Res<X> par(Seq s) {
+                if (!table.isEnabled()) {
+                    return p.pa(s);
+                }
+                Object o = table.get(id, s);
+                if (o == Memo.FAILED) {
+                    return null;
+                }
+                if (o != null) {
+                    return (Res<X>) o;
+                }
+                Res<X> r = p.pa(s);
+                table.put(id, s, r == null ? Memo.FAILED : r);
+                return r;
+            }
+
+            @Override
+            public First first() {
+                return p.first();
+            }
+        };
+    }
 }
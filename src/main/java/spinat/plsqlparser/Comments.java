@@ -0,0 +1,117 @@
+package spinat.plsqlparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// the comments of a source, collected by Scanner.scanRelevant while the parser
+// only gets the relevant tokens. Each comment belongs to the relevant token
+// after it. A comment on the same line after a token is a trailing comment of
+// that token, the other comments are leading comments of the token they belong to.
+public final class Comments {
+
+    private TokenBuffer tokens;
+    private int size = 0;
+    private int[] start = new int[16];
+    private int[] end = new int[16];
+    private int[] owner = new int[16]; // the index of the next relevant token
+    private boolean[] trailing = new boolean[16]; // on the line of the previous relevant token
+
+    void init(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.size = 0;
+    }
+
+    void add(int from, int to, int token, boolean sameLine) {
+        if (this.size == this.start.length) {
+            int n = this.size * 2;
+            this.start = copy(this.start, n);
+            this.end = copy(this.end, n);
+            this.owner = copy(this.owner, n);
+            boolean[] t = new boolean[n];
+            System.arraycopy(this.trailing, 0, t, 0, this.size);
+            this.trailing = t;
+        }
+        this.start[this.size] = from;
+        this.end[this.size] = to;
+        this.owner[this.size] = token;
+        this.trailing[this.size] = sameLine;
+        this.size++;
+    }
+
+    private int[] copy(int[] a, int n) {
+        int[] res = new int[n];
+        System.arraycopy(a, 0, res, 0, this.size);
+        return res;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int start(int i) {
+        return this.start[i];
+    }
+
+    public int end(int i) {
+        return this.end[i];
+    }
+
+    public String text(int i) {
+        return this.tokens.source.subSequence(this.start[i], this.end[i]).toString();
+    }
+
+    // the index of the first comment that belongs to token or a later one
+    private int first(int token) {
+        int lo = 0;
+        int hi = this.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.owner[mid] < token) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // the comments before token that are not trailing comments of the token before it
+    public List<String> leading(int token) {
+        ArrayList<String> res = new ArrayList<String>();
+        for (int i = first(token); i < this.size && this.owner[i] == token; i++) {
+            if (!this.trailing[i]) {
+                res.add(text(i));
+            }
+        }
+        return res;
+    }
+
+    // the comments after token on the same line, before the next relevant token
+    public List<String> trailing(int token) {
+        ArrayList<String> res = new ArrayList<String>();
+        for (int i = first(token + 1); i < this.size && this.owner[i] == token + 1; i++) {
+            if (this.trailing[i]) {
+                res.add(text(i));
+            }
+        }
+        return res;
+    }
+
+    // the leading comments of the first token of node
+    public List<String> leading(Object node, SourceRanges ranges) {
+        int s = ranges.start(node);
+        return s < 0 ? new ArrayList<String>() : leading(s);
+    }
+
+    // the trailing comments of the last token of node, or of the ; after it
+    public List<String> trailing(Object node, SourceRanges ranges) {
+        int e = ranges.end(node);
+        if (e <= 0) {
+            return new ArrayList<String>();
+        }
+        if (e < this.tokens.size() && this.tokens.type(e) == TokenType.Semi) {
+            return trailing(e);
+        }
+        return trailing(e - 1);
+    }
+}
@@ -0,0 +1,158 @@
+package spinat.plsqlparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// the tokens a parser can start with: token types and keyword ids.
+// An Ident token is in the set if its type is or if its keyword is.
+// A nullable parser may succeed without reading a token, it has to be
+// tried on every token. ANY is the set of a parser that does not know
+// how it starts, this is the default of Pa.first.
+// Combinator.orn uses the sets to skip the alternatives that can not
+// start at the current token.
+public final class First {
+
+    private final long types;
+    private final long[] keywords;
+    public final boolean nullable;
+
+    static final int WORDS = (Keywords.count() + 63) / 64;
+
+    public static final First ANY = new First(-1L, all(), true);
+    // nothing, the start of an empty sequence
+    public static final First EMPTY = new First(0L, new long[WORDS], true);
+
+    private First(long types, long[] keywords, boolean nullable) {
+        this.types = types;
+        this.keywords = keywords;
+        this.nullable = nullable;
+    }
+
+    private static long[] all() {
+        long[] a = new long[WORDS];
+        for (int i = 0; i < Keywords.count(); i++) {
+            a[i >> 6] |= 1L << i;
+        }
+        return a;
+    }
+
+    public static First of(TokenType... tts) {
+        long t = 0;
+        for (TokenType tt : tts) {
+            t |= 1L << tt.ordinal();
+        }
+        return new First(t, new long[WORDS], false);
+    }
+
+    public static First keyword(int id) {
+        long[] a = new long[WORDS];
+        a[id >> 6] |= 1L << id;
+        return new First(0L, a, false);
+    }
+
+    // add this set to acc, acc[0] are the token types, then the keywords.
+    // This is for collecting the expected tokens without allocation
+    void addTo(long[] acc) {
+        acc[0] |= this.types;
+        for (int i = 0; i < WORDS; i++) {
+            acc[i + 1] |= this.keywords[i];
+        }
+    }
+
+    // the set collected in acc
+    static First of(long[] acc) {
+        long[] a = new long[WORDS];
+        System.arraycopy(acc, 1, a, 0, WORDS);
+        return new First(acc[0], a, false);
+    }
+
+    public boolean isAny() {
+        return this.types == -1L;
+    }
+
+    // true if a parser with this set may start at t
+    public boolean canStart(Token t) {
+        if (this.nullable || (this.types & (1L << t.ttype.ordinal())) != 0) {
+            return true;
+        }
+        return t.kw >= 0 && (this.keywords[t.kw >> 6] & (1L << t.kw)) != 0;
+    }
+
+    public First union(First o) {
+        long[] a = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            a[i] = this.keywords[i] | o.keywords[i];
+        }
+        return new First(this.types | o.types, a, this.nullable || o.nullable);
+    }
+
+    // the set of a parser that may also succeed without reading a token
+    public First orEmpty() {
+        return this.nullable ? this : new First(this.types, this.keywords, true);
+    }
+
+    // the set of this parser followed by next
+    public First then(First next) {
+        if (!this.nullable) {
+            return this;
+        }
+        First u = union(next);
+        return next.nullable ? u : new First(u.types, u.keywords, false);
+    }
+
+    private boolean hasType(TokenType tt) {
+        return (this.types & (1L << tt.ordinal())) != 0;
+    }
+
+    private boolean hasKeyword(int id) {
+        return (this.keywords[id >> 6] & (1L << id)) != 0;
+    }
+
+    // the tokens that both sets can start with, empty if they are disjoint.
+    // An Ident type overlaps with every keyword of the other set
+    public List<String> overlap(First o) {
+        List<String> res = new ArrayList<String>();
+        if (this.nullable || o.nullable) {
+            res.add("<empty>");
+        }
+        if (this.isAny() || o.isAny()) {
+            res.add("<any>");
+            return res;
+        }
+        for (TokenType tt : TokenType.values()) {
+            if (this.hasType(tt) && o.hasType(tt)) {
+                res.add(tt.toString());
+            }
+        }
+        boolean ident = hasType(TokenType.Ident);
+        boolean oident = o.hasType(TokenType.Ident);
+        for (int i = 0; i < Keywords.count(); i++) {
+            if ((this.hasKeyword(i) || ident) && (o.hasKeyword(i) || oident) && !(ident && oident)) {
+                res.add(Keywords.word(i));
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        if (this.isAny()) {
+            return "{any}";
+        }
+        StringBuilder b = new StringBuilder("{");
+        for (TokenType tt : TokenType.values()) {
+            if (hasType(tt)) {
+                b.append(b.length() > 1 ? ", " : "").append(tt);
+            }
+        }
+        for (int i = 0; i < Keywords.count(); i++) {
+            if (hasKeyword(i)) {
+                b.append(b.length() > 1 ? ", " : "").append(Keywords.word(i));
+            }
+        }
+        if (this.nullable) {
+            b.append(b.length() > 1 ? ", " : "").append("<empty>");
+        }
+        return b.append("}").toString();
+    }
+}
@@ -0,0 +1,245 @@
+package spinat.plsqlparser;
+
+// the keywords the parser looks for, each has a small integer id.
+// The scanner classifies every Ident token with lookup, so the parser
+// can compare ids and switch on them instead of comparing strings.
+// The lookup uses a perfect hash table, the multiplier is searched
+// when the class is loaded so that no two keywords share a slot.
+public final class Keywords {
+
+    private Keywords() {
+    }
+
+    // the id of an Ident token that is not a keyword, and of all other tokens
+    public static final int NONE = -1;
+
+    public static final int ALL = 0;
+    public static final int AND = 1;
+    public static final int ANY_CS = 2;
+    public static final int ARRAY = 3;
+    public static final int AS = 4;
+    public static final int AUTHID = 5;
+    public static final int BEGIN = 6;
+    public static final int BETWEEN = 7;
+    public static final int BODY = 8;
+    public static final int BULK = 9;
+    public static final int BY = 10;
+    public static final int BYTE = 11;
+    public static final int CASE = 12;
+    public static final int CAST = 13;
+    public static final int CHAR = 14;
+    public static final int CHARACTER = 15;
+    public static final int CLOSE = 16;
+    public static final int COLLECT = 17;
+    public static final int CONSTANT = 18;
+    public static final int CONTINUE = 19;
+    public static final int CREATE = 20;
+    public static final int CURRENT_USER = 21;
+    public static final int CURSOR = 22;
+    public static final int DATE = 23;
+    public static final int DAY = 24;
+    public static final int DECLARE = 25;
+    public static final int DEFAULT = 26;
+    public static final int DEFINER = 27;
+    public static final int DELETE = 28;
+    public static final int DETERMINISTIC = 29;
+    public static final int ELSE = 30;
+    public static final int ELSIF = 31;
+    public static final int END = 32;
+    public static final int ESCAPE = 33;
+    public static final int EXCEPTION = 34;
+    public static final int EXECUTE = 35;
+    public static final int EXIT = 36;
+    public static final int FALSE = 37;
+    public static final int FETCH = 38;
+    public static final int FOR = 39;
+    public static final int FORALL = 40;
+    public static final int FROM = 41;
+    public static final int FUNCTION = 42;
+    public static final int GOTO = 43;
+    public static final int IF = 44;
+    public static final int IMMEDIATE = 45;
+    public static final int IN = 46;
+    public static final int INDEX = 47;
+    public static final int INSERT = 48;
+    public static final int INTERVAL = 49;
+    public static final int INTO = 50;
+    public static final int IS = 51;
+    public static final int JAVA = 52;
+    public static final int LANGUAGE = 53;
+    public static final int LIKE = 54;
+    public static final int LIMIT = 55;
+    public static final int LOCAL = 56;
+    public static final int LONG = 57;
+    public static final int LOOP = 58;
+    public static final int MERGE = 59;
+    public static final int MOD = 60;
+    public static final int MONTH = 61;
+    public static final int MULTISET = 62;
+    public static final int NAME = 63;
+    public static final int NEW = 64;
+    public static final int NOCOPY = 65;
+    public static final int NOT = 66;
+    public static final int NULL = 67;
+    public static final int OF = 68;
+    public static final int OPEN = 69;
+    public static final int OR = 70;
+    public static final int OTHERS = 71;
+    public static final int OUT = 72;
+    public static final int PACKAGE = 73;
+    public static final int PARALLEL_ENABLE = 74;
+    public static final int PIPE = 75;
+    public static final int PIPELINED = 76;
+    public static final int PRAGMA = 77;
+    public static final int PROCEDURE = 78;
+    public static final int RAISE = 79;
+    public static final int RANGE = 80;
+    public static final int RAW = 81;
+    public static final int RECORD = 82;
+    public static final int REF = 83;
+    public static final int REPLACE = 84;
+    public static final int RESTRICT_REFERENCES = 85;
+    public static final int RESULT_CACHE = 86;
+    public static final int RETURN = 87;
+    public static final int RETURNING = 88;
+    public static final int REVERSE = 89;
+    public static final int ROLLBACK = 90;
+    public static final int ROW = 91;
+    public static final int ROWTYPE = 92;
+    public static final int SAVEPOINT = 93;
+    public static final int SECOND = 94;
+    public static final int SELECT = 95;
+    public static final int SET = 96;
+    public static final int SQL = 97;
+    public static final int SUBTYPE = 98;
+    public static final int TABLE = 99;
+    public static final int THEN = 100;
+    public static final int TIME = 101;
+    public static final int TIMESTAMP = 102;
+    public static final int TO = 103;
+    public static final int TRUE = 104;
+    public static final int TYPE = 105;
+    public static final int UNION = 106;
+    public static final int UPDATE = 107;
+    public static final int USING = 108;
+    public static final int VARCHAR = 109;
+    public static final int VARCHAR2 = 110;
+    public static final int VARRAY = 111;
+    public static final int VARYING = 112;
+    public static final int WHEN = 113;
+    public static final int WHILE = 114;
+    public static final int WITH = 115;
+    public static final int YEAR = 116;
+    public static final int ZONE = 117;
+
+    private static final String[] words = {
+        "all", "and", "any_cs", "array", "as", "authid", "begin", "between", "body", "bulk", "by",
+        "byte", "case", "cast", "char", "character", "close", "collect", "constant", "continue",
+        "create", "current_user", "cursor", "date", "day", "declare", "default", "definer",
+        "delete", "deterministic", "else", "elsif", "end", "escape", "exception", "execute", "exit",
+        "false", "fetch", "for", "forall", "from", "function", "goto", "if", "immediate", "in",
+        "index", "insert", "interval", "into", "is", "java", "language", "like", "limit", "local",
+        "long", "loop", "merge", "mod", "month", "multiset", "name", "new", "nocopy", "not", "null",
+        "of", "open", "or", "others", "out", "package", "parallel_enable", "pipe", "pipelined",
+        "pragma", "procedure", "raise", "range", "raw", "record", "ref", "replace",
+        "restrict_references", "result_cache", "return", "returning", "reverse", "rollback", "row",
+        "rowtype", "savepoint", "second", "select", "set", "sql", "subtype", "table", "then",
+        "time", "timestamp", "to", "true", "type", "union", "update", "using", "varchar",
+        "varchar2", "varray", "varying", "when", "while", "with", "year", "zone"
+    };
+
+    // the words the parser never takes as identifier
+    private static final boolean[] reserved = new boolean[words.length];
+
+    private static final int BITS = 12;
+    private static final short[] table = new short[1 << BITS];
+    private static final int multiplier;
+    private static final int maxLength;
+
+    static {
+        for (int id : new int[]{INSERT, UPDATE, SELECT, DECLARE, LOOP, END, WHILE,
+            BEGIN, NULL, IN, OUT, EXCEPTION, CONSTANT, CURSOR,
+            PRAGMA, PROCEDURE, FUNCTION, IF, FOR, WHEN, ELSIF, RAISE, RETURN, ELSE, LIKE,
+            CASE, TABLE, CAST}) {
+            reserved[id] = true;
+        }
+        int ml = 0;
+        for (String w : words) {
+            ml = Math.max(ml, w.length());
+        }
+        maxLength = ml;
+        int m = 0x9E3779B1;
+        while (!tryMultiplier(m)) {
+            m = m * 1103515245 + 12345 | 1;
+        }
+        multiplier = m;
+    }
+
+    private static boolean tryMultiplier(int m) {
+        java.util.Arrays.fill(table, (short) -1);
+        for (int i = 0; i < words.length; i++) {
+            int slot = slot(hash(words[i], 0, words[i].length()), m);
+            if (table[slot] >= 0) {
+                return false;
+            }
+            table[slot] = (short) i;
+        }
+        return true;
+    }
+
+    private static int slot(int hash, int m) {
+        return (hash * m) >>> (32 - BITS);
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static int hash(CharSequence s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + lower(s.charAt(i));
+        }
+        return h;
+    }
+
+    // the keyword id of the characters from .. to of s, ignoring case, NONE if it is no keyword
+    public static int lookup(CharSequence s, int from, int to) {
+        int n = to - from;
+        if (n == 0 || n > maxLength) {
+            return NONE;
+        }
+        int id = table[slot(hash(s, from, to), multiplier)];
+        if (id < 0) {
+            return NONE;
+        }
+        String w = words[id];
+        if (w.length() != n) {
+            return NONE;
+        }
+        for (int i = 0; i < n; i++) {
+            if (lower(s.charAt(from + i)) != w.charAt(i)) {
+                return NONE;
+            }
+        }
+        return id;
+    }
+
+    public static int lookup(String s) {
+        return lookup(s, 0, s.length());
+    }
+
+    // the number of keywords, the ids are 0 .. count() - 1
+    public static int count() {
+        return words.length;
+    }
+
+    // the keyword in lower case
+    public static String word(int id) {
+        return words[id];
+    }
+
+    public static boolean isReserved(int id) {
+        return id >= 0 && reserved[id];
+    }
+}
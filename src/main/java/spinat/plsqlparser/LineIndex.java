@@ -0,0 +1,93 @@
+package spinat.plsqlparser;
+
+// the start positions of the lines of a source. The scanner adds a line start
+// whenever it passes a newline, line and column of a position are then found
+// by binary search. Lines start at 1, columns at 0.
+public final class LineIndex {
+
+    private int[] starts;
+    private int size;
+    private final int firstLine;
+
+    LineIndex() {
+        this(0, 1);
+    }
+
+    // a single line with number firstLine that starts at start
+    LineIndex(int start, int firstLine) {
+        this(start, firstLine, 16);
+    }
+
+    // as above, with room for capacity line starts before the array grows
+    LineIndex(int start, int firstLine, int capacity) {
+        this.starts = new int[capacity];
+        this.starts[0] = start;
+        this.size = 1;
+        this.firstLine = firstLine;
+    }
+
+    // the lines of s, for sources that were not scanned
+    static LineIndex of(CharSequence s) {
+        LineIndex res = new LineIndex();
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '\n') {
+                res.add(i + 1);
+            }
+        }
+        return res;
+    }
+
+    // a new line starts at start, the position after a newline
+    void add(int start) {
+        if (this.size == this.starts.length) {
+            int[] a = new int[this.size * 2];
+            System.arraycopy(this.starts, 0, a, 0, this.size);
+            this.starts = a;
+        }
+        this.starts[this.size++] = start;
+    }
+
+    // add the line starts of other after position from, moved by delta
+    void addAfter(LineIndex other, int from, int delta) {
+        for (int i = other.index(from) + 1; i < other.size; i++) {
+            add(other.starts[i] + delta);
+        }
+    }
+
+    // add the line starts of other up to and including position to,
+    // this is a new index of the same source start
+    void addUpTo(LineIndex other, int to) {
+        int n = other.index(to) + 1;
+        for (int i = 1; i < n; i++) {
+            add(other.starts[i]);
+        }
+    }
+
+    // the number of lines
+    public int size() {
+        return this.size;
+    }
+
+    // the index of the line containing pos
+    private int index(int pos) {
+        int lo = 0;
+        int hi = this.size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (this.starts[mid] <= pos) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    public int line(int pos) {
+        return this.firstLine + index(pos);
+    }
+
+    public int col(int pos) {
+        return pos - this.starts[index(pos)];
+    }
+}
@@ -0,0 +1,163 @@
+package spinat.plsqlparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// the memo table for packrat parsing, see Combinator.memo.
+// A rule registered here is parsed at most once per token index,
+// the result (or the failure) is remembered and returned on the next try.
+// Memoization is off until setEnabled(true) is called.
+// The remembered results are kept with the token array (Tokens.memo), so
+// they are gone with the tokens and the Memo itself holds no input. A token
+// array keeps the table of one Memo, another Parser on the same tokens
+// replaces it. The tables grow with the tokens read, on a windowed Seq the
+// results for the tokens that were dropped from the window are dropped too.
+public final class Memo {
+
+    // marks a remembered failure, i.e. the parser returned null
+    static final Object FAILED = new Object();
+
+    private static final int MAX_RULES = 64;
+
+    private final List<String> names = new ArrayList<String>();
+    private final AtomicLongArray hits = new AtomicLongArray(MAX_RULES);
+    private final AtomicLongArray misses = new AtomicLongArray(MAX_RULES);
+    private volatile boolean enabled = false;
+
+    private static final class Table {
+
+        final Memo memo;
+        // results[id][i - base] is the result of rule id at token index i
+        int base;
+        Object[][] results;
+
+        Table(Memo memo, int base, int rules) {
+            this.memo = memo;
+            this.base = base;
+            this.results = new Object[rules][];
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    synchronized int register(String name) {
+        if (this.names.size() >= MAX_RULES) {
+            throw new RuntimeException("too many memoized rules");
+        }
+        this.names.add(name);
+        return this.names.size() - 1;
+    }
+
+    private Table table(Seq s) {
+        Tokens tokens = s.tokens();
+        Object o = tokens.memo;
+        if (o instanceof Table && ((Table) o).memo == this) {
+            return (Table) o;
+        }
+        Table t = new Table(this, tokens.firstIndex(), this.names.size());
+        tokens.memo = t;
+        return t;
+    }
+
+    // the remembered result for rule id at the position s, null if there is none
+    Object get(int id, Seq s) {
+        Table t = table(s);
+        int k = s.index() - t.base;
+        if (id >= t.results.length || t.results[id] == null || k < 0 || k >= t.results[id].length) {
+            this.misses.incrementAndGet(id);
+            return null;
+        }
+        Object o = t.results[id][k];
+        if (o == null) {
+            this.misses.incrementAndGet(id);
+        } else {
+            this.hits.incrementAndGet(id);
+        }
+        return o;
+    }
+
+    void put(int id, Seq s, Object o) {
+        Table t = table(s);
+        if (id >= t.results.length) {
+            Object[][] a = new Object[this.names.size()][];
+            System.arraycopy(t.results, 0, a, 0, t.results.length);
+            t.results = a;
+        }
+        int k = s.index() - t.base;
+        if (k < 0) {
+            return;
+        }
+        if (t.results[id] == null) {
+            t.results[id] = new Object[256];
+        }
+        if (k >= t.results[id].length) {
+            k = makeRoom(t, s.tokens(), id, k);
+        }
+        t.results[id][k] = o;
+    }
+
+    // make room for the offset k in the results of rule id: the results for
+    // the tokens that were dropped are dropped, then the array grows.
+    // Returns the offset of k after the drop
+    private static int makeRoom(Table t, Tokens tokens, int id, int k) {
+        int drop = tokens.firstIndex() - t.base;
+        if (drop > 0) {
+            for (Object[] a : t.results) {
+                if (a != null) {
+                    int n = Math.max(0, a.length - drop);
+                    System.arraycopy(a, a.length - n, a, 0, n);
+                    Arrays.fill(a, n, a.length, null);
+                }
+            }
+            t.base += drop;
+            k -= drop;
+        }
+        Object[] a = t.results[id];
+        if (k >= a.length) {
+            t.results[id] = Arrays.copyOf(a, Math.max(2 * a.length, k + 1));
+        }
+        return k;
+    }
+
+    // forget the remembered results for the tokens of s
+    public void clear(Seq s) {
+        s.tokens().memo = null;
+    }
+
+    public synchronized long hits(String name) {
+        int i = this.names.indexOf(name);
+        return i < 0 ? 0 : this.hits.get(i);
+    }
+
+    public synchronized long misses(String name) {
+        int i = this.names.indexOf(name);
+        return i < 0 ? 0 : this.misses.get(i);
+    }
+
+    public synchronized void resetCounters() {
+        for (int i = 0; i < MAX_RULES; i++) {
+            this.hits.set(i, 0);
+            this.misses.set(i, 0);
+        }
+    }
+
+    // one line per rule: name, hits, misses and the hit rate
+    public synchronized String report() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < this.names.size(); i++) {
+            long h = this.hits.get(i);
+            long m = this.misses.get(i);
+            double rate = h + m == 0 ? 0 : 100.0 * h / (h + m);
+            b.append(String.format("%-20s hits %10d misses %10d hit rate %5.1f%%%n", this.names.get(i), h, m, rate));
+        }
+        return b.toString();
+    }
+}
@@ -2,22 +2,17 @@ package spinat.plsqlparser;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by fkarsany on 2015.03.12..
  */
 public class PLSQLParserUtils {
 
-    private static Seq scan(String s) {
-        ArrayList<Token> a = Scanner.scanAll(s);
-        ArrayList<Token> r = new ArrayList<Token>();
-        for (Token t : a) {
-            if (Scanner.isRelevant(t)) {
-                r.add(t);
-            }
-        }
-        return new Seq(r);
+    static Seq scan(CharSequence s) {
+        return new Seq(Scanner.scanRelevant(s));
     }
 
     public static T2<Ast.PackageSpec, Ast.PackageBody> parsePackageSpecBody(String s) {
@@ -34,4 +29,40 @@ public class PLSQLParserUtils {
         }
     }
 
+    public static T2<Ast.PackageSpec, Ast.PackageBody> parsePackageSpecBody(File f, Charset charset) {
+        try {
+            Parser p = new Parser();
+            return p.paCRPackageSpecAndBody(scan(Util.mapFile(f.getPath(), charset)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // procedure and function bodies are parsed on first access, see Ast.LazyBlock
+    public static T2<Ast.PackageSpec, Ast.PackageBody> parsePackageSpecBodySkeleton(String s) {
+        Parser p = new Parser();
+        p.setSkeleton(true);
+        Seq seq = scan(s);
+        return p.paCRPackageSpecAndBody(seq);
+    }
+
+    // a declaration that can not be parsed does not end the parse, it becomes
+    // an Ast.ErrorDeclaration and its error is added to errors, see Parser.setRecovery
+    public static T2<Ast.PackageSpec, Ast.PackageBody> parsePackageSpecBodyRecovering(String s,
+            List<ParseException> errors) {
+        Parser p = new Parser();
+        p.setRecovery(errors);
+        Seq seq = scan(s);
+        return p.paCRPackageSpecAndBody(seq);
+    }
+
+    // the bodies of the package body members are parsed concurrently on the executor
+    public static T2<Ast.PackageSpec, Ast.PackageBody> parsePackageSpecBodyParallel(String s, ExecutorService executor) {
+        T2<Ast.PackageSpec, Ast.PackageBody> r = parsePackageSpecBodySkeleton(s);
+        Ast.PackageBody b = r.f2;
+        List<Ast.Declaration> decls = new Parser().parseBodies(b.declarations, executor);
+        return new T2<Ast.PackageSpec, Ast.PackageBody>(r.f1,
+                new Ast.PackageBody(b.name, decls, b.statements, b.exceptionBlock));
+    }
+
 }
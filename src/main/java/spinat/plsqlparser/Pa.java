@@ -2,17 +2,28 @@ package spinat.plsqlparser;
 
 public abstract class Pa<X> {
 
-    // the parser object
-    // if the value in Res is an object which is of type
-    // Ranged then stuff the range infromation into it
-    public static <X> Res<X> extendRes(Res<X> r, Seq start) {
-        if (r != null && (r.v instanceof Ranged)) {
-            Ranged ra = (Ranged) r.v;
-            if (ra.getStart() < 0) {
-                ra.setRange(start.head().pos, r.next.head().ipos);
-            }
+    // a check for tests: while a thread is sealed it must not create
+    // parsers. The grammar is built with the Parser, a parser created
+    // while parsing is a rule that builds its parts on every call.
+    // It is only done if the system property plsqlparser.checkSealed is
+    // true, as in the tests, otherwise creating a parser does not look at it
+    static final boolean CHECK_SEALED = Boolean.getBoolean("plsqlparser.checkSealed");
+
+    private static final ThreadLocal<Boolean> SEALED = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+
+    static void seal(boolean sealed) {
+        SEALED.set(sealed);
+    }
+
+    protected Pa() {
+        if (CHECK_SEALED && SEALED.get()) {
+            throw new IllegalStateException("parser created while parsing: " + getClass().getName());
         }
-        return r;
     }
 
     // implement this method to parse
@@ -24,10 +35,17 @@ public abstract class Pa<X> {
     // but it is not possible.
     protected abstract Res<X> par(Seq s);
 
-    // call this method to parse, if possible the parsed object
-    // is extended with range information, i.e. where it is in the source
+    // the tokens this parser can start with, see First.
+    // Override it if they are known, orn then skips this parser
+    // when it can not start at the current token
+    public First first() {
+        return First.ANY;
+    }
+
+    // call this method to parse, the token ranges of the parsed nodes
+    // are recorded by the Parser if it has SourceRanges
     public final Res<X> pa(Seq s) {
-        return extendRes(par(s), s);
+        return par(s);
     }
 
 }
@@ -1,18 +1,64 @@
 package spinat.plsqlparser;
 
 // this execption is thrown if parsing fails
-// the exception contains the position where parsing failed
+// the exception contains the position where parsing failed.
+// A parse error is an expected outcome for invalid input, so the exception
+// is cheap: it has no stack trace (set the system property
+// spinat.plsqlparser.stacktraces to true to get one), the message is built
+// when it is asked for, and it keeps tokens but not the token list.
+// It also has the furthest position where a parser failed and the
+// tokens that were expected there, that is usually the real error.
 public class ParseException extends RuntimeException {
 
-    private static String positionString(Seq s) {
-        return s.head().line + "/" + s.head().col;
-    }
+    private static final boolean STACK_TRACES = Boolean.getBoolean("spinat.plsqlparser.stacktraces");
+
+    private final String msg;
+    private String message = null;
 
-    public final Seq position;
+    // the index of the token where parsing failed and the token. They
+    // replace the Seq position field of older versions, see README.md
+    public final int index;
+    public final Token token;
+    // the furthest token index where a parser failed, -1 if none did,
+    // the token there and what the failing parsers expected
+    public final int furthestIndex;
+    public final Token furthestToken;
+    public final First expected;
 
     public ParseException(String s, Seq position) {
-        super(s + " at " + positionString(position));
-        this.position = position;
+        this.msg = s;
+        this.index = position.index();
+        this.token = position.head();
+        Tokens tokens = position.tokens();
+        this.furthestIndex = tokens.failIndex();
+        this.furthestToken = tokens.failToken();
+        this.expected = this.furthestIndex < 0 ? null : tokens.failExpected();
+    }
+
+    private static String positionString(Token t) {
+        return t.line() + "/" + t.col();
     }
 
+    @Override
+    public String getMessage() {
+        if (this.message == null) {
+            StringBuilder b = new StringBuilder();
+            b.append(this.msg).append(" at ").append(positionString(this.token));
+            if (this.furthestIndex >= this.index) {
+                if (this.furthestIndex > this.index) {
+                    b.append(", parsed up to ").append(positionString(this.furthestToken));
+                }
+                b.append(", found ").append(this.furthestToken.ttype == TokenType.TheEnd
+                        ? "end of input" : "'" + this.furthestToken.str() + "'");
+                b.append(" expecting one of ").append(this.expected);
+            }
+            this.message = b.toString();
+        }
+        return this.message;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return STACK_TRACES ? super.fillInStackTrace() : this;
+    }
 }
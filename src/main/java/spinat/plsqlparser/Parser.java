@@ -8,16 +8,112 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class Parser {
 
-    static final List<String> badwords = Arrays.asList(new String[]{"insert", "update", "select", "declare", "loop", "end", "while",
-        "begin", "null", "in", "out", "exception", "constant", "cursor",
-        "pragma", "procedure", "function", "if", "for", "exception", "when", "elsif", "raise", "return", "else", "like",
-        "case", "table", "cast"});
-
     static final Combinator c = new Combinator();
 
+    // the memo table for the rules that are tried more than once at the same position,
+    // off by default, enable with memo.setEnabled(true)
+    public final Memo memo = new Memo();
+
+    // in skeleton mode the bodies of procedures and functions are only skipped,
+    // they are parsed when the block is first used, see Ast.LazyBlock
+    private boolean skeleton = false;
+
+    public void setSkeleton(boolean skeleton) {
+        this.skeleton = skeleton;
+    }
+
+    public boolean isSkeleton() {
+        return skeleton;
+    }
+
+    // a windowed Seq drops the tokens of a skipped body before it is parsed,
+    // so skeleton mode is rejected before the parse starts
+    private void checkSkeleton(Seq s) {
+        if (skeleton && s.tokens() instanceof WindowTokens) {
+            throw new IllegalArgumentException("skeleton mode does not work on a windowed Seq");
+        }
+    }
+
+    // if set, the token ranges of the AST nodes are recorded here, see ranged
+    private SourceRanges ranges = null;
+
+    public void setSourceRanges(SourceRanges ranges) {
+        this.ranges = ranges;
+    }
+
+    public SourceRanges getSourceRanges() {
+        return ranges;
+    }
+
+    // record the range of the node of r, it starts at s. A node that is
+    // passed on by an enclosing rule keeps its own, innermost range
+    <X> Res<X> ranged(Res<X> r, Seq s) {
+        if (ranges != null && r != null) {
+            range(r.v, s, r.next);
+        }
+        return r;
+    }
+
+    // record the range of a node that is not returned on its own, from s up
+    // to next. Enum values are shared, they have no range
+    void range(Object node, Seq s, Seq next) {
+        if (ranges != null && !(node instanceof Enum)) {
+            ranges.add(node, s.index(), next.index());
+        }
+    }
+
+    // the number of ranges recorded so far, see backtrack
+    int mark() {
+        return ranges == null ? 0 : ranges.mark();
+    }
+
+    // an alternative that started at mark m is given up, the ranges of its
+    // nodes are dropped. Not with memoization, a remembered node may come back
+    void backtrack(int m) {
+        if (ranges != null && !memo.isEnabled()) {
+            ranges.reset(m);
+        }
+    }
+
+    // if set, the parser is in recovery mode: a declaration that can not be
+    // parsed is added to the declarations as an Ast.ErrorDeclaration, its
+    // error is added here and parsing goes on after it, see resync
+    private List<ParseException> errors = null;
+
+    public void setRecovery(List<ParseException> errors) {
+        this.errors = errors;
+    }
+
+    public List<ParseException> getRecovery() {
+        return errors;
+    }
+
+    // parse s with p up to its end, for validating input where errors are
+    // common. The error is returned, null if there is none. ParseExceptions
+    // have no stack trace, so an invalid input costs about as much as a valid one
+    public ParseException check(Pa<?> p, Seq s) {
+        Res<?> r;
+        try {
+            r = p.pa(s);
+        } catch (ParseException e) {
+            return e;
+        }
+        if (r == null) {
+            return new ParseException("can not parse " + p, s);
+        }
+        if (r.next.head().ttype != TokenType.TheEnd) {
+            return new ParseException("expecting end of input", r.next);
+        }
+        return null;
+    }
+
     void must(Res r, Seq s, String msg) {
         if (r == null) {
             throw new ParseException("can not parse: " + msg, s);
@@ -27,13 +123,14 @@ public class Parser {
     Pa<String> pkw_or = c.forkw("or");
     Pa<String> pkw_and = c.forkw("and");
     Pa<String> pkw_not = c.forkw("not");
+    Pa<String> pkw_null = c.forkw("null");
     Pa<String> pkw_like = c.forkw("like");
     Pa<String> pkw_between = c.forkw("between");
     Pa<String> pkw_type = c.forkw("type");
     Pa<String> pkw_subtype = c.forkw("subtype");
     Pa<String> pkw_procedure = c.forkw("procedure");
     Pa<String> pkw_function = c.forkw("function");
-    Pa<String> pkw_exception = c.forkw("excpetion");
+    Pa<String> pkw_exception = c.forkw("exception");
     Pa<String> pkw_is = c.forkw("is");
     Pa<String> pkw_index = c.forkw("index");
     Pa<String> pkw_by = c.forkw("by");
@@ -89,6 +186,34 @@ public class Parser {
     Pa<String> pkw_in_out = c.forkw2("in", "out");
     Pa<String> pkw_nocopy = c.forkw("nocopy");
     Pa<String> pkw_from = c.forkw("from");
+    Pa<String> pkw_escape = c.forkw("escape");
+    Pa<String> pkw_sql = c.forkw("sql");
+    Pa<String> pkw_rowtype = c.forkw("rowtype");
+    Pa<String> pkw_create = c.forkw("create");
+    Pa<String> pkw_authid = c.forkw("authid");
+    Pa<String> pkw_constant = c.forkw("constant");
+    Pa<String> pkw_record = c.forkw("record");
+    Pa<String> pkw_ref_cursor = c.forkw2("ref", "cursor");
+    Pa<String> pkw_table_of = c.forkw2("table", "of");
+    Pa<String> pkw_any_cs = c.forkw("any_cs");
+    Pa<String> pkw_package = c.forkw("package");
+    Pa<String> pkw_savepoint = c.forkw("savepoint");
+    Pa<String> pkw_rollback = c.forkw("rollback");
+    Pa<String> pkw_to = c.forkw("to");
+    Pa<String> pkw_java = c.forkw("java");
+    Pa<String> pkw_name = c.forkw("name");
+
+    // the rules are built once with the parser, not on every call
+    Pa<String> pOptNot = c.opt(pkw_not);
+    Pa<Boolean> pBoptNot = c.bopt(pkw_not);
+    Pa<Boolean> pBoptNocopy = c.bopt(pkw_nocopy);
+    Pa<Boolean> pBoptReverse = c.bopt(pkw_reverse);
+    Pa<Boolean> pBoptBulkCollect = c.bopt(pkw_bulk_collect);
+    Pa<String> pOptOrReplace = c.opt(c.forkw2("or", "replace"));
+    Pa<String> pkw_select_or_with = c.or2(pkw_select, pkw_with);
+    Pa<T2<String, String>> pPOpenSelect = c.seq2(c.pPOpen, pkw_select);
+    Pa<T2<String, String>> pPOpenWith = c.seq2(c.pPOpen, pkw_with);
+    Pa<String> pSlash = c.token(TokenType.Div);
     // do not care about the string, what operators are there else?
     Pa pkw_multiset_union_all = c.seq2(c.forkw2("multiset", "union"), c.forkw("all"));
 
@@ -106,6 +231,11 @@ public class Parser {
             }
         }
 
+        @Override
+        public First first() {
+            return p.first();
+        }
+
         @Override
         public String toString() {
             return "pNatural";
@@ -114,16 +244,18 @@ public class Parser {
 
     Pa<Integer> pInteger = new Pa<Integer>() {
         final Pa<String> p = c.token(TokenType.Int);
+        final Pa<String> pMinus = c.token(TokenType.Minus);
+        final Pa<String> pPlus = c.token(TokenType.Plus);
 
         @Override
         public Res<Integer> par(Seq s) {
-            Res rm = c.token(TokenType.Minus).pa(s);
+            Res rm = pMinus.pa(s);
             int sign = 1;
             if (rm != null) {
                 s = rm.next;
                 sign = -1;
             } else {
-                Res rp = c.token(TokenType.Plus).pa(s);
+                Res rp = pPlus.pa(s);
                 if (rp != null) {
                     s = rp.next;
                 }
@@ -136,46 +268,80 @@ public class Parser {
             }
         }
 
+        @Override
+        public First first() {
+            return First.of(TokenType.Minus, TokenType.Plus, TokenType.Int);
+        }
+
         @Override
         public String toString() {
             return "pNatural";
         }
     };
 
-    final Pa<Ast.Ident> pIdent = new Pa<Ast.Ident>() {
+    // memoized, paExtractFunction and the parameterized types in paDataType
+    // look at an identifier that is parsed again if they do not match
+    final Pa<Ast.Ident> pIdent = c.memo(memo, "pIdent", new Pa<Ast.Ident>() {
+
+        final First first = First.of(TokenType.Ident, TokenType.QIdent);
 
         @Override
         public Res<Ast.Ident> par(Seq s) {
             Token t = s.head();
             if (t.ttype == TokenType.Ident) {
-                if (badwords.contains(t.str.toLowerCase())) {
+                if (Keywords.isReserved(t.kw)) {
+                    s.fail(first);
                     return null;
                 } else {
-                    return new Res<Ast.Ident>(new Ast.Ident(t.str.toUpperCase()), s.tail());
+                    return ranged(new Res<Ast.Ident>(new Ast.Ident(t.sym), s.tail()), s);
                 }
             } else if (t.ttype == TokenType.QIdent) {
-                return new Res<Ast.Ident>(new Ast.Ident(t.str.substring(1, t.str.length() - 1)), s.tail());
+                return ranged(new Res<Ast.Ident>(new Ast.Ident(t.sym), s.tail()), s);
             } else {
+                s.fail(first);
                 return null;
             }
         }
 
+        @Override
+        public First first() {
+            return first;
+        }
+
         @Override
         public String toString() {
             return "pIdent";
         }
-    };
+    });
+
+    final Pa<Ast.Ident> pOptIdent = c.opt(pIdent);
 
     final Pa<String> justkw = new Pa<String>() {
 
+        final First first = First.of(TokenType.Ident);
+
         @Override
         public Res<String> par(Seq s) {
-            if (s.head().ttype == TokenType.Ident) {
-                return new Res<String>(s.head().str.toLowerCase(), s.tail());
+            Token t = s.head();
+            if (t.ttype == TokenType.Ident) {
+                // the keywords are already lower case strings
+                String w = t.kw == Keywords.NONE ? t.sym.lower() : Keywords.word(t.kw);
+                return new Res<String>(w, s.tail());
             } else {
+                s.fail(first);
                 return null;
             }
         }
+
+        @Override
+        public First first() {
+            return first;
+        }
+
+        @Override
+        public String toString() {
+            return "justkw";
+        }
     };
 
     final Pa<Ast.CmpOperator> pCmpOp = new Pa<Ast.CmpOperator>() {
@@ -205,7 +371,7 @@ public class Parser {
                 default:
                     return null;
             }
-            return new Res<Ast.CmpOperator>(o, s.tail());
+            return ranged(new Res<Ast.CmpOperator>(o, s.tail()), s);
         }
     };
 
@@ -214,7 +380,7 @@ public class Parser {
         @Override
         public Res<BigInteger> par(Seq s) {
             if (s.head().ttype == TokenType.Int) {
-                return new Res<BigInteger>(new BigInteger(s.head().str), s.tail());
+                return new Res<BigInteger>(new BigInteger(s.head().str()), s.tail());
             } else {
                 return null;
             }
@@ -222,242 +388,269 @@ public class Parser {
     };
 
     Res<Ast.Expression> paExpr(Seq s) {
-        return paOrExpr(s);
+        return pExpr.pa(s);
     }
 
-    final Pa<Expression> pExpr = new Pa<Expression>() {
+    // the bounds of a for loop are tried as cursor expression first
+    final Pa<Expression> pExpr = c.memo(memo, "pExpr", new Pa<Expression>() {
 
         @Override
         public Res<Expression> par(Seq s) {
-            return paExpr(s);
+            return paClimb(s, L_OR);
         }
 
         @Override
         public String toString() {
             return "pExpr";
         }
-    };
+    });
 
-    public Res<Ast.Expression> paOrExpr(Seq s) {
-        Res<List<Ast.Expression>> r = c.sep1(pAndExpr, pkw_or).pa(s);
-        if (r == null) {
-            return null;
-        } else {
-            return new Res<Ast.Expression>(new Ast.OrExpr(r.v), r.next);
-        }
-    }
+    final Pa<List<Expression>> pExprList = c.sep1(pExpr, c.pComma);
 
-    final Pa<Ast.Expression> pOrExpr = new Pa<Expression>() {
-        @Override
-        public Res<Expression> par(Seq s) {
-            return paOrExpr(s);
-        }
-    };
+    // an expression without or at the top
+    final Pa<Expression> pAndExpr = new Pa<Expression>() {
 
-    Res<Ast.Expression> paAndExpr(Seq s) {
-        Res<List<Ast.Expression>> r = c.sep1(pNotExpression, pkw_and).pa(s);
-        if (r == null) {
-            return null;
-        } else {
-            return new Res<Ast.Expression>(new Ast.AndExpr(r.v), r.next);
-        }
-    }
-
-    final Pa<Ast.Expression> pAndExpr = new Pa<Expression>() {
         @Override
         public Res<Expression> par(Seq s) {
-            return paAndExpr(s);
+            return paClimb(s, L_AND);
         }
-    };
-
-    final Pa<Expression> pNotExpression = new Pa<Expression>() {
 
         @Override
-        public Res<Expression> par(Seq s) {
-            Res<String> r = c.opt(pkw_not).pa(s);
-            Res<Expression> r2 = paCompExpr(r.next);
-            if (r.v == null) {
-                return r2;
-            } else {
-                return new Res<Ast.Expression>(new Ast.NotExpr(r2.v), r2.next);
-            }
+        public String toString() {
+            return "pAndExpr";
         }
-
     };
 
-    final Res<Expression> paCompExpr(Seq s) {
-        Res<Ast.Expression> r = paIsNullExpr(s);
-        if (r == null) {
-            return null;
-        }
-        Res<Ast.CmpOperator> r2 = pCmpOp.pa(r.next);
-        if (r2 == null) {
-            return r;
-        } else {
-            Res<Ast.Expression> r3 = paIsNullExpr(r2.next);
-            return new Res<Expression>(new Ast.CompareExpr(r2.v, r.v, r3.v), r3.next);
-        }
-    }
-
-    Res<Expression> paIsNullExpr(Seq s) {
-        Res<Expression> r = paLikeExpr(s);
-        if (r == null) {
-            return null;
-        }
-        Res<String> r2 = pkw_is.pa(r.next);
-        if (r2 == null) {
-            return r;
-        }
-        Res<String> r3 = c.opt(pkw_not).pa(r2.next);
-        Res<Expression> r4 = paLikeExpr(r3.next);
-        must(r4, r3.next, "expression");
-        return new Res<Expression>(new Ast.IsNullExpr(r4.v, r2.v != null), r4.next);
-
-    }
-
-    Res<Expression> paLikeExpr(Seq s) {
-        Res<Expression> r = paBetweenExpr(s);
-        if (r == null) {
-            return null;
-        }
-        Res<Boolean> rnot = c.bopt(pkw_not).pa(r.next);
-        Res<String> r2 = pkw_like.pa(rnot.next);
-        if (r2 == null) {
-            return r;
-        }
-        Res<Expression> r3 = paBetweenExpr(r2.next);
-        must(r3, r2.next, "expression");
-        Res<String> r4 = c.forkw("escape").pa(r3.next);
-        if (r4 == null) {
-            return new Res<Expression>(new Ast.LikeExpression(r.v, r3.v, null, rnot.v), r3.next);
-        } else {
-            Res<Expression> r5 = paBetweenExpr(r4.next);
-            must(r5, r4.next, "expression");
-            return new Res<Expression>(new Ast.LikeExpression(r.v, r3.v, r5.v, rnot.v), r5.next);
-        }
-    }
-
-    Res<Expression> paBetweenExpr(Seq s) {
-        Res<Expression> r = paInExpression(s);
-        if (r == null) {
-            return null;
-        }
-        Res<String> r2 = c.opt(pkw_not).pa(r.next);
-        Res<String> r3 = pkw_between.pa(r2.next);
-        if (r3 == null) {
-            return r;
-        }
-        Res<Expression> re1 = paInExpression(r3.next);
-        Res<String> rand = pkw_and.pa(re1.next);
-        Res<Expression> re2 = paInExpression(rand.next);
-        if (r2.v == null) {
-            return new Res<Expression>(new Ast.BetweenExpression(r.v, re1.v, re2.v), re2.next);
-        } else {
-            // fixme:  x not between a and b versus not (x between a and b)
-            return new Res<Expression>(new Ast.NotExpr(new Ast.BetweenExpression(r.v, re1.v, re2.v)), re2.next);
+    // the operator levels of paClimb, from the loosest to the tightest
+    static final int L_OR = 1;
+    static final int L_AND = 2;
+    static final int L_NOT = 3;
+    static final int L_CMP = 4;
+    static final int L_IS = 5;
+    static final int L_LIKE = 6;
+    static final int L_BETWEEN = 7;
+    static final int L_IN = 8;
+    static final int L_MULTISET = 9;
+    static final int L_ADD = 10;
+    static final int L_MUL = 11;
+
+    // the level of the operator at s, 0 if there is none
+    static int operatorLevel(Seq s) {
+        Token t = s.head();
+        switch (t.ttype) {
+            case Plus:
+            case Minus:
+            case StringAdd:
+                return L_ADD;
+            case Mul:
+            case Div:
+                return L_MUL;
+            case Less:
+            case LEqual:
+            case Greater:
+            case GEqual:
+            case Equal:
+            case NEqual:
+                return L_CMP;
+            case Ident:
+                switch (t.kw) {
+                    case Keywords.OR:
+                        return L_OR;
+                    case Keywords.AND:
+                        return L_AND;
+                    case Keywords.IS:
+                        return L_IS;
+                    case Keywords.LIKE:
+                        return L_LIKE;
+                    case Keywords.BETWEEN:
+                        return L_BETWEEN;
+                    case Keywords.IN:
+                        return L_IN;
+                    case Keywords.MULTISET:
+                        return L_MULTISET;
+                    case Keywords.MOD:
+                        return L_MUL;
+                    case Keywords.NOT:
+                        switch (s.tail().head().kw) {
+                            case Keywords.LIKE:
+                                return L_LIKE;
+                            case Keywords.BETWEEN:
+                                return L_BETWEEN;
+                            case Keywords.IN:
+                                return L_IN;
+                            default:
+                                return 0;
+                        }
+                    default:
+                        return 0;
+                }
+            default:
+                return 0;
         }
     }
 
-    Res<Expression> paInExpression(Seq s) {
-        // multiset !
-        Res<Expression> r = paMultisetExpression(s);
-        if (r == null) {
-            return null;
-        }
-        Res<String> r2 = c.opt(c.forkw("not")).pa(r.next);
-        Res<String> r3 = c.forkw("in").pa(r2.next);
-        if (r3 == null) {
-            return r;
-        }
-        Res<List<Expression>> r4 = c.withParensCommit(c.sep1(pExpr, c.pComma), r3.next);
-        Ast.Expression e = new Ast.InExpression(r.v, r4.v);
-        if (r2.v == null) {
-            return new Res<Expression>(e, r4.next);
+    // precedence climbing: the operators at a level >= minLevel are parsed in
+    // one loop instead of a descent through all levels. Or and and nodes are
+    // only created if there are at least two operands. Comparison, is, like,
+    // between and in do not chain, after one of them only looser operators
+    // can follow.
+    Res<Expression> paClimb(Seq s, int minLevel) {
+        Expression e;
+        Seq next;
+        int maxLevel;
+        if (minLevel <= L_NOT && s.head().kw == Keywords.NOT) {
+            Res<Expression> r = paClimb(s.tail(), L_CMP);
+            must(r, s.tail(), "expression");
+            e = new Ast.NotExpr(r.v);
+            next = r.next;
+            maxLevel = L_AND;
         } else {
-            return new Res<Expression>(new Ast.NotExpr(e), r4.next);
-        }
-
-    }
-
-    Res<Expression> paMultisetExpression(Seq s) {
-        // fixme
-        Res<Expression> r = paAddExpression(s);
-        if (r == null) {
-            return null;
-        }
-        Expression e = r.v;
-        Seq ss = r.next;
-        while (true) {
-            Res rmu = pkw_multiset_union_all.pa(ss);
-            if (rmu == null) {
-                return new Res<Expression>(e, ss);
+            Res<Expression> r = paUnarySignExpr(s);
+            if (r == null) {
+                return null;
             }
-            Res<Expression> r2 = paAddExpression(rmu.next);
-            must(r2, rmu.next, "expecting an expression");
-            e = new Ast.MultisetExpr("multi", e, r2.v);
-            ss = r2.next;
-        }
-    }
-
-    Res<Expression> paAddExpression(Seq s) {
-        Res<Expression> r = paMulExpression(s);
-        if (r == null) {
-            return null;
+            e = r.v;
+            next = r.next;
+            maxLevel = L_MUL;
         }
-        Expression e = r.v;
-        Seq ss = r.next;
         while (true) {
-            final Ast.Binop binop;
-            switch (ss.head().ttype) {
-                case Plus:
-                    binop = Ast.Binop.ADD;
+            range(e, s, next);
+            int level = operatorLevel(next);
+            if (level == 0 || level > maxLevel || level < minLevel) {
+                return ranged(new Res<Expression>(e, next), s);
+            }
+            Token op = next.head();
+            Seq after = next.tail();
+            switch (level) {
+                case L_MUL: {
+                    Res<Expression> rx = paUnarySignExpr(after);
+                    must(rx, after, "expecting an expression");
+                    e = new Ast.BinopExpression(mulOperator(op), e, rx.v);
+                    next = rx.next;
+                    break;
+                }
+                case L_ADD: {
+                    Res<Expression> rx = paClimb(after, L_MUL);
+                    must(rx, after, "expecting an expression");
+                    e = new Ast.BinopExpression(addOperator(op), e, rx.v);
+                    next = rx.next;
+                    break;
+                }
+                case L_MULTISET: {
+                    Res<?> rmu = pkw_multiset_union_all.pa(next);
+                    if (rmu == null) {
+                        return ranged(new Res<Expression>(e, next), s);
+                    }
+                    Res<Expression> rx = paClimb(rmu.next, L_ADD);
+                    must(rx, rmu.next, "expecting an expression");
+                    e = new Ast.MultisetExpr("multi", e, rx.v);
+                    next = rx.next;
+                    break;
+                }
+                case L_IN: {
+                    boolean not = op.kw == Keywords.NOT;
+                    Seq ss = not ? after.tail() : after;
+                    Res<List<Expression>> rl = c.withParensCommit(pExprList, ss);
+                    must(rl, ss, "(");
+                    e = new Ast.InExpression(e, rl.v);
+                    if (not) {
+                        range(e, s, rl.next);
+                        e = new Ast.NotExpr(e);
+                    }
+                    next = rl.next;
+                    break;
+                }
+                case L_BETWEEN: {
+                    boolean not = op.kw == Keywords.NOT;
+                    Seq ss = not ? after.tail() : after;
+                    Res<Expression> r1 = paClimb(ss, L_IN);
+                    must(r1, ss, "expression");
+                    Res<String> rand = pkw_and.pa(r1.next);
+                    must(rand, r1.next, "and");
+                    Res<Expression> r2 = paClimb(rand.next, L_IN);
+                    must(r2, rand.next, "expression");
+                    e = new Ast.BetweenExpression(e, r1.v, r2.v);
+                    if (not) {
+                        range(e, s, r2.next);
+                        // fixme:  x not between a and b versus not (x between a and b)
+                        e = new Ast.NotExpr(e);
+                    }
+                    next = r2.next;
+                    break;
+                }
+                case L_LIKE: {
+                    boolean not = op.kw == Keywords.NOT;
+                    Seq ss = not ? after.tail() : after;
+                    Res<Expression> r1 = paClimb(ss, L_BETWEEN);
+                    must(r1, ss, "expression");
+                    Expression escape = null;
+                    next = r1.next;
+                    if (next.head().kw == Keywords.ESCAPE) {
+                        Res<Expression> r2 = paClimb(next.tail(), L_BETWEEN);
+                        must(r2, next.tail(), "expression");
+                        escape = r2.v;
+                        next = r2.next;
+                    }
+                    e = new Ast.LikeExpression(e, r1.v, escape, not);
+                    break;
+                }
+                case L_IS: {
+                    boolean not = after.head().kw == Keywords.NOT;
+                    Seq ss = not ? after.tail() : after;
+                    Res<String> rnull = c.mustpa(pkw_null, ss, "expecting null");
+                    e = new Ast.IsNullExpr(e, not);
+                    next = rnull.next;
                     break;
-                case Minus:
-                    binop = Ast.Binop.MINUS;
+                }
+                case L_CMP: {
+                    Res<Ast.CmpOperator> ro = pCmpOp.pa(next);
+                    Res<Expression> r1 = paClimb(ro.next, L_IS);
+                    must(r1, ro.next, "expression");
+                    e = new Ast.CompareExpr(ro.v, e, r1.v);
+                    next = r1.next;
                     break;
-                case StringAdd:
-                    binop = Ast.Binop.CONCAT;
+                }
+                case L_AND:
+                case L_OR: {
+                    ArrayList<Expression> l = new ArrayList<Expression>();
+                    l.add(e);
+                    while (next.head().kw == op.kw) {
+                        Res<Expression> r1 = paClimb(next.tail(), level + 1);
+                        if (r1 == null) {
+                            throw new ParseException("expecteing one more thing", next.tail());
+                        }
+                        l.add(r1.v);
+                        next = r1.next;
+                    }
+                    e = level == L_AND ? new Ast.AndExpr(l) : new Ast.OrExpr(l);
                     break;
+                }
                 default:
-                    return new Res<Expression>(e, ss);
+                    throw new RuntimeException("BUG");
             }
-            Res<Expression> rx = paMulExpression(ss.tail());
-            must(rx, ss.tail(), "expecting an expression");
-            e = new Ast.BinopExpression(binop, e, rx.v);
-            ss = rx.next;
+            maxLevel = level == L_MUL || level == L_ADD || level == L_MULTISET ? level : level - 1;
         }
     }
 
-    Res<Expression> paMulExpression(Seq s) {
-        Res<Expression> r = paUnarySignExpr(s);
-        if (r == null) {
-            return null;
+    static Ast.Binop addOperator(Token t) {
+        switch (t.ttype) {
+            case Plus:
+                return Ast.Binop.ADD;
+            case Minus:
+                return Ast.Binop.MINUS;
+            default:
+                return Ast.Binop.CONCAT;
         }
-        Expression e = r.v;
-        Seq ss = r.next;
-        while (true) {
-            final Ast.Binop binop;
-            switch (ss.head().ttype) {
-                case Mul:
-                    binop = Ast.Binop.ADD;
-                    break;
-                case Div:
-                    binop = Ast.Binop.MINUS;
-                    break;
-                case Ident:
-                    if (ss.head().str.equalsIgnoreCase("mod")) {
-                        binop = Ast.Binop.MOD;
-                        break;
-                    } else {
-                        return new Res<Expression>(e, ss);
-                    }
-                default:
-                    return new Res<Expression>(e, ss);
-            }
-            Res<Expression> rx = paUnarySignExpr(ss.tail());
-            must(rx, ss.tail(), "expecting an expression");
-            e = new Ast.BinopExpression(binop, e, rx.v);
-            ss = rx.next;
+    }
+
+    static Ast.Binop mulOperator(Token t) {
+        switch (t.ttype) {
+            case Mul:
+                return Ast.Binop.MUL;
+            case Div:
+                return Ast.Binop.DIV;
+            default:
+                return Ast.Binop.MOD;
         }
     }
 
@@ -466,11 +659,11 @@ public class Parser {
             case Plus:
                 Res<Expression> r1 = pExponentExpr(s.tail());
                 must(r1, s.tail(), "exptecting expression");
-                return new Res<Expression>(new Ast.UnaryPlusExpression(r1.v), r1.next);
+                return ranged(new Res<Expression>(new Ast.UnaryPlusExpression(r1.v), r1.next), s);
             case Minus:
                 Res<Expression> r2 = pExponentExpr(s.tail());
                 must(r2, s.tail(), "exptecting expression");
-                return new Res<Expression>(new Ast.UnaryPlusExpression(r2.v), r2.next);
+                return ranged(new Res<Expression>(new Ast.UnaryMinusExpression(r2.v), r2.next), s);
             default:
                 return pExponentExpr(s);
         }
@@ -488,7 +681,7 @@ public class Parser {
         }
         Res<Expression> re = paAtomExpr(rp.next);
         must(re, rp.next, "Expression expected");
-        return new Res<Expression>(new Ast.BinopExpression(Ast.Binop.POWER, r.v, re.v), re.next);
+        return ranged(new Res<Expression>(new Ast.BinopExpression(Ast.Binop.POWER, r.v, re.v), re.next), s);
     }
     /* 
      and pAtom s = orn [
@@ -510,69 +703,65 @@ public class Parser {
     public Res<Expression> paAtomExpr(Seq s) {
         TokenType tt = s.head().ttype;
         if (tt == TokenType.Int) {
-            return new Res<Expression>(new Ast.CNumber(new BigDecimal(s.head().str)), s.tail());
+            return ranged(new Res<Expression>(new Ast.CNumber(new BigDecimal(s.head().str())), s.tail()), s);
         }
         if (tt == TokenType.String) {
-            String s1 = s.head().str;
+            String s1 = s.head().str();
             String s2 = s1.substring(1, s1.length() - 1);
-            return new Res<Expression>(new Ast.CString(s2.replace("''", "'")), s.tail());
+            return ranged(new Res<Expression>(new Ast.CString(s2.replace("''", "'")), s.tail()), s);
         }
         if (tt == TokenType.QString) {
-            String s1 = s.head().str;
+            String s1 = s.head().str();
             String s2 = s1.substring(3, s1.length() - 2);
-            return new Res<Expression>(new Ast.CString(s2), s.tail());
+            return ranged(new Res<Expression>(new Ast.CString(s2), s.tail()), s);
         }
 
         if (tt == TokenType.LParen) {
             Res<Expression> r = c.withParensCommit(pExpr, s);
-            return new Res<Expression>(r.v, r.next);
+            return ranged(new Res<Expression>(r.v, r.next), s);
         }
         if (tt == TokenType.DollarDollarIdent) {
-            String str = s.head().str.substring(2);
-            return new Res<Expression>(new Ast.DollarDollar(str), s.tail());
+            String str = s.head().str().substring(2);
+            return ranged(new Res<Expression>(new Ast.DollarDollar(str), s.tail()), s);
         }
 
         if (tt == TokenType.Ident) {
-            String s2 = s.head().str;
-            if (s2.equalsIgnoreCase("true")) {
-                return new Res<Expression>(new Ast.CBool(true), s.tail());
-            }
-            if (s2.equalsIgnoreCase("false")) {
-                return new Res<Expression>(new Ast.CBool(false), s.tail());
-            }
-            if (s2.equalsIgnoreCase("null")) {
-                return new Res<Expression>(new Ast.CNull(), s.tail());
-            }
-            if (s2.equalsIgnoreCase("case")) {
-                return paCaseExpr(s);
-            }
-            if (s2.equalsIgnoreCase("sql")) {
-                return paSQLAttribute(s);
-            }
-            // date '2001-1-1' is expression of type date
-            if (s2.equalsIgnoreCase("date") && s.tail().head().ttype == TokenType.String) {
-                String sc = s.tail().head().str;
-                String sclean = sc.substring(1, sc.length() - 1);
-                return new Res<Expression>(new Ast.CString(sclean.replace("''", "'")), s.tail().tail());
-            }
-
-            if (s2.equalsIgnoreCase("new")) {
-                Res<List<Ast.CallPart>> r = paCallParts(s.tail());
-                must(r, s.tail(), "expecting a callpart");
-                return new Res<Expression>(new Ast.NewExpression(r.v), r.next);
+            switch (s.head().kw) {
+                case Keywords.TRUE:
+                    return ranged(new Res<Expression>(new Ast.CBool(true), s.tail()), s);
+                case Keywords.FALSE:
+                    return ranged(new Res<Expression>(new Ast.CBool(false), s.tail()), s);
+                case Keywords.NULL:
+                    return ranged(new Res<Expression>(new Ast.CNull(), s.tail()), s);
+                case Keywords.CASE:
+                    return paCaseExpr(s);
+                case Keywords.SQL:
+                    return paSQLAttribute(s);
+                case Keywords.DATE:
+                    // date '2001-1-1' is expression of type date
+                    if (s.tail().head().ttype == TokenType.String) {
+                        String sc = s.tail().head().str();
+                        String sclean = sc.substring(1, sc.length() - 1);
+                        return ranged(new Res<Expression>(new Ast.CString(sclean.replace("''", "'")), s.tail().tail()), s);
+                    }
+                    break;
+                case Keywords.NEW:
+                    Res<List<Ast.CallPart>> r = paCallParts(s.tail());
+                    must(r, s.tail(), "expecting a callpart");
+                    return ranged(new Res<Expression>(new Ast.NewExpression(r.v), r.next), s);
+                default:
             }
-
         }
         return paVariableOrFunctionCall(s);
     }
 
     Res<Expression> paCaseExpr(Seq s) {
-        Res<String> r0 = c.forkw("case").pa(s);
+        Res<String> r0 = pkw_case.pa(s);
         if (r0 == null) {
             return null;
         }
         Seq ss;
-        Res<String> r1 = c.forkw("when").pa(r0.next);
+        Res<String> r1 = pkw_when.pa(r0.next);
         Expression em;
         if (r1 == null) {
             Res<Expression> rm = paExpr(r0.next);
@@ -584,17 +773,19 @@ public class Parser {
         }
         List<Ast.CaseExpressionPart> l = new ArrayList<Ast.CaseExpressionPart>();
         while (true) {
-            Res<String> r2 = c.forkw("when").pa(ss);
+            Res<String> r2 = pkw_when.pa(ss);
             if (r2 == null) {
                 break;
             }
             Res<Expression> re = paExpr(r2.next);
-            Res<String> rt = c.forkw("then").pa(re.next);
+            Res<String> rt = pkw_then.pa(re.next);
             Res<Expression> re2 = paExpr(rt.next);
-            l.add(new Ast.CaseExpressionPart(re.v, re2.v));
+            Ast.CaseExpressionPart part = new Ast.CaseExpressionPart(re.v, re2.v);
+            range(part, ss, re2.next);
+            l.add(part);
             ss = re2.next;
         }
-        Res<String> r3 = c.forkw("else").pa(ss);
+        Res<String> r3 = pkw_else.pa(ss);
         Expression defaultt;
         if (r3 == null) {
             defaultt = null;
@@ -603,21 +794,21 @@ public class Parser {
             defaultt = rd.v;
             ss = rd.next;
         }
-        Res<String> r4 = c.forkw("end").pa(ss);
+        Res<String> r4 = pkw_end.pa(ss);
         must(r4, ss, "expecting and END");
         if (em == null) {
-            return new Res<Expression>(new Ast.CaseBoolExpression(l, defaultt), r4.next);
+            return ranged(new Res<Expression>(new Ast.CaseBoolExpression(l, defaultt), r4.next), s);
         } else {
-            return new Res<Expression>(new Ast.CaseMatchExpression(em, l, defaultt), r4.next);
+            return ranged(new Res<Expression>(new Ast.CaseMatchExpression(em, l, defaultt), r4.next), s);
         }
     }
 
     Res<Expression> paSQLAttribute(Seq s) {
-        Res<String> r1 = c.forkw("sql").pa(s);
+        Res<String> r1 = pkw_sql.pa(s);
         Res<String> r2 = c.pPercent.pa(r1.next);
         // fixme : quoted allowed
         Res<List<Ast.CallPart>> rcp = paCallParts(r2.next);
-        return new Res<Expression>(new Ast.SqlAttribute(rcp.v), rcp.next);
+        return ranged(new Res<Expression>(new Ast.SqlAttribute(rcp.v), rcp.next), s);
     }
 
     Pa<Ast.LValue> pLValue = new Pa<Ast.LValue>() {
@@ -627,7 +818,7 @@ public class Parser {
             if (r == null) {
                 return null;
             }
-            return new Res<Ast.LValue>(new Ast.LValue(r.v), r.next);
+            return ranged(new Res<Ast.LValue>(new Ast.LValue(r.v), r.next), s);
         }
     };
 
@@ -637,13 +828,17 @@ public class Parser {
             return null;
         }
         ArrayList<Ast.CallPart> l = new ArrayList<Ast.CallPart>();
-        l.add(new Ast.Component(rident.v));
+        Ast.CallPart part = new Ast.Component(rident.v);
+        range(part, s, rident.next);
+        l.add(part);
         Seq next = rident.next;
         while (true) {
             Res rdot = c.pDot.pa(next);
             if (rdot != null) {
-                Res<Ast.Ident> rident2 = c.mustp(pIdent, "ident").pa(rdot.next);
-                l.add(new Ast.Component(rident2.v));
+                Res<Ast.Ident> rident2 = c.mustpa(pIdent, rdot.next, "ident");
+                part = new Ast.Component(rident2.v);
+                range(part, rdot.next, rident2.next);
+                l.add(part);
                 next = rident2.next;
                 continue;
             }
@@ -651,7 +846,9 @@ public class Parser {
             if (rca == null) {
                 break;
             }
-            l.add(new Ast.CallOrIndexOp(rca.v));
+            part = new Ast.CallOrIndexOp(rca.v);
+            range(part, next, rca.next);
+            l.add(part);
             next = rca.next;
         }
         return new Res<List<Ast.CallPart>>(l, next);
@@ -680,16 +877,20 @@ public class Parser {
             return null;
         }
         // from here comitted
-        Res<Ast.Expression> r5 = c.mustp(pExpr, "expression").pa(r4.next);
-        Res r6 = c.mustp(c.pPClose, "close paren").pa(r5.next);
-        return new Res<Expression>(new Ast.ExtractDatePart(r3.v.toUpperCase(), r5.v), r6.next);
+        Res<Ast.Expression> r5 = c.mustpa(pExpr, r4.next, "expression");
+        Res r6 = c.mustpa(c.pPClose, r5.next, "close paren");
+        return ranged(new Res<Expression>(new Ast.ExtractDatePart(r3.v.toUpperCase(), r5.v), r6.next), s);
     }
 
+    final Pa<T2<String, Ast.Ident>> pOptDotIdent = c.opt(c.seq2(c.pDot, pIdent));
+
     Res<Expression> paVariableOrFunctionCall(Seq s) {
+        int m = mark();
         Res<Expression> r_extract = paExtractFunction(s);
         if (r_extract != null) {
             return r_extract;
         }
+        backtrack(m);
 
         Res<List<Ast.CallPart>> r = paCallParts(s);
         if (r == null) {
@@ -697,19 +898,19 @@ public class Parser {
         }
         Res<String> rp = c.pPercent.pa(r.next);
         if (rp == null) {
-            return new Res<Expression>(new Ast.VarOrCallExpression(r.v), r.next);
+            return ranged(new Res<Expression>(new Ast.VarOrCallExpression(r.v), r.next), s);
         } else {
             Res<Ast.Ident> ra = pIdent.pa(rp.next);
             must(ra, rp.next, "expectinga cursor attribute");
             // fixme maybe change to Ast
-            Res<T2<String, Ast.Ident>> noch_ein_dot = c.opt(c.seq2(c.pDot, pIdent)).pa(ra.next);
+            Res<T2<String, Ast.Ident>> noch_ein_dot = pOptDotIdent.pa(ra.next);
             String attr_val;
             if (noch_ein_dot.v != null) {
                 attr_val = ra.v.val + "." + noch_ein_dot.v.f2.val;
             } else {
                 attr_val = ra.v.val;
             }
-            return new Res<Expression>(new Ast.CursorAttribute(r.v, attr_val), noch_ein_dot.next);
+            return ranged(new Res<Expression>(new Ast.CursorAttribute(r.v, attr_val), noch_ein_dot.next), s);
         }
     }
 
@@ -717,30 +918,38 @@ public class Parser {
         if (s.head().ttype != TokenType.LParen) {
             return null;
         } else {
-            Res<List<Ast.ActualParam>> r = c.withParensCommit(c.sep(paParam, c.pComma), s);
+            Res<List<Ast.ActualParam>> r = c.withParensCommit(pParams, s);
             return r;
         }
     }
 
     public final Pa<Ast.ActualParam> paParam = new Pa<Ast.ActualParam>() {
 
+        final Pa<T2<Ast.Ident, String>> pName = c.seq2(pIdent, c.pArrow);
+
         @Override
         public Res<Ast.ActualParam> par(Seq s) {
-            Res<T2<T2<Ast.Ident, String>, Expression>> r1
-                    = c.seq2(c.opt(c.seq2(pIdent, c.pArrow)), pExpr).pa(s);
+            int m = mark();
+            Res<T2<Ast.Ident, String>> rn = pName.pa(s);
+            // the name is kept as string, for a positional parameter the
+            // identifier is parsed again. The Ident node is not used
+            backtrack(m);
+            Res<Expression> r1 = pExpr.pa(rn == null ? s : rn.next);
             if (r1 == null) {
                 return null;
             }
-            if ((r1.v.f1 == null)) {
-                return new Res<Ast.ActualParam>(new Ast.ActualParam(r1.v.f2, null), r1.next);
+            if (rn == null) {
+                return ranged(new Res<Ast.ActualParam>(new Ast.ActualParam(r1.v, null), r1.next), s);
             } else {
-                return new Res<Ast.ActualParam>(new Ast.ActualParam(r1.v.f2, r1.v.f1.f1.val), r1.next);
+                return ranged(new Res<Ast.ActualParam>(new Ast.ActualParam(r1.v, rn.v.f1.val), r1.next), s);
             }
 
         }
 
     };
 
+    final Pa<List<Ast.ActualParam>> pParams = c.sep(paParam, c.pComma);
+
     /*
      public final Pa<Ast.CallPart> pCallPart
      = new Pa<Ast.CallPart>() {
@@ -768,67 +977,80 @@ public class Parser {
     //sep1(pIdent,tDot) s
     public final Pa<List<Ast.Ident>> pIdents = c.sep1(pIdent, c.pDot);
 
+    Pa<String> pkw_timestamp_with = c.forkw2("timestamp", "with");
+    Pa<Boolean> pBoptLocal = c.bopt(c.forkw("local"));
+    Pa<String> pkw_time_zone = c.forkw2("time", "zone");
+    Pa<String> pkw_long_raw = c.forkw2("long", "raw");
+    Pa<T2<String, String>> pkw_interval_year_to_month = c.seq2(c.forkw2("interval", "year"), c.forkw2("to", "month"));
+    Pa<T2<String, String>> pkw_interval_day_to_second = c.seq2(c.forkw2("interval", "day"), c.forkw2("to", "second"));
+    final Pa<T2<Ast.Ident, String>> pIdentPOpen = c.seq2(pIdent, c.pPOpen);
+    final Pa<T2<Integer, String>> pCharLength = c.seq2(pNatural, c.opt(c.or2(c.forkw("char"), c.forkw("byte"))));
+    final Pa<T2<Integer, T2<String, Integer>>> pPrecisionScale = c.seq2(pNatural, c.opt(c.seq2(c.pComma, pNatural)));
+
     public Res<Ast.DataType> paDataType(Seq s) {
-        Res r1 = c.forkw2("timestamp", "with").pa(s);
+        Res r1 = pkw_timestamp_with.pa(s);
         if (r1 != null) {
-            Res rloc = c.bopt(c.forkw("local")).pa(r1.next);
-            Res rtz = c.forkw2("time", "zone").pa(rloc.next);
+            Res rloc = pBoptLocal.pa(r1.next);
+            Res rtz = pkw_time_zone.pa(rloc.next);
             must(rtz, r1.next, "expecteing with 'time zone'");
-            return new Res<Ast.DataType>(new Ast.TimestampWithTimezone(), rtz.next);
+            return ranged(new Res<Ast.DataType>(new Ast.TimestampWithTimezone(), rtz.next), s);
         }
-        Res<String> r2 = c.forkw2("long", "raw").pa(s);
+        Res<String> r2 = pkw_long_raw.pa(s);
         if (r2 != null) {
-            return new Res<Ast.DataType>(new Ast.LongRaw(), r2.next);
+            return ranged(new Res<Ast.DataType>(new Ast.LongRaw(), r2.next), s);
         }
-        Res r2b = c.seq2(c.forkw2("interval", "year"), c.forkw2("to", "month")).pa(s);
+        Res r2b = pkw_interval_year_to_month.pa(s);
         if (r2b != null) {
-            return new Res<Ast.DataType>(new Ast.IntervalYearToMonth(), r2b.next);
+            return ranged(new Res<Ast.DataType>(new Ast.IntervalYearToMonth(), r2b.next), s);
         }
 
-        Res r2c = c.seq2(c.forkw2("interval", "day"), c.forkw2("to", "second")).pa(s);
+        Res r2c = pkw_interval_day_to_second.pa(s);
         if (r2c != null) {
-            return new Res<Ast.DataType>(new Ast.IntervalDayToSecond(), r2c.next);
+            return ranged(new Res<Ast.DataType>(new Ast.IntervalDayToSecond(), r2c.next), s);
         }
 
         // parametrisierter typ varchar2, varchar ,raw, number
-        Res<T2<Ast.Ident, String>> r3 = c.seq2(pIdent, c.pPOpen).pa(s);
-        if (r3 != null) {
+        int m = mark();
+        Res<T2<Ast.Ident, String>> r3 = pIdentPOpen.pa(s);
+        if (r3 == null) {
+            backtrack(m);
+        } else {
             String tyname1 = r3.v.f1.val;
             if (tyname1.equalsIgnoreCase("varchar2") || tyname1.equalsIgnoreCase("varchar")) {
-                Res<T2<Integer, String>> r99 = c.seq2(pNatural, c.opt(c.or2(c.forkw("char"), c.forkw("byte")))).pa(r3.next);
-                Res r100 = c.mustp(c.pPClose, "expecting ')'").pa(r99.next);
-                return new Res<Ast.DataType>(new Ast.ParameterizedType(r3.v.f1, r99.v.f1, null), r100.next);
+                Res<T2<Integer, String>> r99 = c.mustpa(pCharLength, r3.next, "expecting a length");
+                Res r100 = c.mustpa(c.pPClose, r99.next, "expecting ')'");
+                return ranged(new Res<Ast.DataType>(new Ast.ParameterizedType(r3.v.f1, r99.v.f1, null), r100.next), s);
             } else {
-                Res<T2<Integer, T2<String, Integer>>> r99 = c.seq2(pNatural, c.opt(c.seq2(c.pComma, pNatural))).pa(r3.next);
-                Res r100 = c.mustp(c.pPClose, "expecting ')'").pa(r99.next);
+                Res<T2<Integer, T2<String, Integer>>> r99 = c.mustpa(pPrecisionScale, r3.next, "expecting a precision");
+                Res r100 = c.mustpa(c.pPClose, r99.next, "expecting ')'");
                 Integer z;
                 if (r99.v.f2 != null) {
                     z = r99.v.f2.f2;
                 } else {
                     z = null;
                 }
-                return new Res<Ast.DataType>(new Ast.ParameterizedType(r3.v.f1, r99.v.f1, z), r100.next);
+                return ranged(new Res<Ast.DataType>(new Ast.ParameterizedType(r3.v.f1, r99.v.f1, z), r100.next), s);
             }
         }
         // ident.ident... 
         //  ident.ident... %type
         //  ident.ident... %rowtype
 
-        Res<List<Ast.Ident>> r4 = c.sep1(pIdent, c.pDot).pa(s);
+        Res<List<Ast.Ident>> r4 = pIdents.pa(s);
         if (r4 == null) {
             return null;
         }
         Res<String> r5 = c.pPercent.pa(r4.next);
         if (r5 == null) {
-            return new Res<Ast.DataType>(new Ast.NamedType(r4.v), r4.next);
+            return ranged(new Res<Ast.DataType>(new Ast.NamedType(r4.v), r4.next), s);
         }
-        Res<String> r6 = c.forkw("type").pa(r5.next);
+        Res<String> r6 = pkw_type.pa(r5.next);
         if (r6 != null) {
-            return new Res<Ast.DataType>(new Ast.VarType(r4.v), r6.next);
+            return ranged(new Res<Ast.DataType>(new Ast.VarType(r4.v), r6.next), s);
         }
-        Res<String> r7 = c.forkw("rowtype").pa(r5.next);
+        Res<String> r7 = pkw_rowtype.pa(r5.next);
         if (r7 != null) {
-            return new Res<Ast.DataType>(new Ast.RowType(r4.v), r7.next);
+            return ranged(new Res<Ast.DataType>(new Ast.RowType(r4.v), r7.next), s);
         }
         throw new ParseException("expecting row or type", r5.next);
     }
@@ -854,19 +1076,19 @@ public class Parser {
         }
         Res<String> r2 = c.pDot.pa(r.next);
         if (r2 == null) {
-            return new Res<Ast.ObjectName>(new Ast.ObjectName(null, r.v), r.next);
+            return ranged(new Res<Ast.ObjectName>(new Ast.ObjectName(null, r.v), r.next), s);
         }
         Res<Ast.Ident> r3 = pIdent.pa(r2.next);
         must(r3, r2.next, "expecting ident");
-        return new Res<Ast.ObjectName>(new Ast.ObjectName(r.v, r3.v), r3.next);
+        return ranged(new Res<Ast.ObjectName>(new Ast.ObjectName(r.v, r3.v), r3.next), s);
     }
 
     public Res<Boolean> paCreateOrReplace(Seq s) {
-        Res<String> r = c.forkw("create").pa(s);
+        Res<String> r = pkw_create.pa(s);
         if (r == null) {
             return null;
         }
-        Res<String> r2 = c.opt(c.forkw2("or", "replace")).pa(r.next);
+        Res<String> r2 = pOptOrReplace.pa(r.next);
         return new Res<Boolean>(r2.v == null, r2.next);
     }
 
@@ -879,21 +1101,21 @@ public class Parser {
 
         @Override
         public Res<String> par(Seq s) {
-            Res<String> r = c.forkw("authid").pa(s);
+            Res<String> r = pkw_authid.pa(s);
             if (r == null) {
                 return null;
             }
             // fixme check for current_user or definer
-            return c.mustp(justkw, "some word").pa(r.next);
+            return c.mustpa(justkw, r.next, "some word");
         }
     };
 
     public Pa<String> pIsOrAs = new Pa<String>() {
         @Override
         public Res<String> par(Seq s) {
-            Res<String> r = justkw.pa(s);
-            if (r != null && (r.v.equals("is") || r.v.equals("as"))) {
-                return r;
+            int kw = s.head().kw;
+            if (kw == Keywords.IS || kw == Keywords.AS) {
+                return s.headString();
             } else {
                 return null;
             }
@@ -903,25 +1125,28 @@ public class Parser {
     public Pa<String> pAssignOrDefault = c.or2(c.forkw("default"), c.pAssign);
 
     public Pa<String> pNotNull = c.forkw2("not", "null");
+    Pa<Boolean> pBoptNotNull = c.bopt(pNotNull);
 
     //fun pVariableDeclaration s =
     // seq3(pDataType, bopt(pNotNull), opt(commit(pAssignOrDefault,pExpr))) s
     public Pa<T3<Ast.DataType, Boolean, T2<String, Ast.Expression>>> pVariableDeclaration
-            = c.seq3(pDataType, c.bopt(pNotNull), c.opt(c.seq2(pAssignOrDefault, pExpr)));
+            = c.seq3(pDataType, pBoptNotNull, c.opt(c.seq2(pAssignOrDefault, pExpr)));
 
     // fun pConstantDeclaration s =
     //  seq5(kw "constant",pDataType, bopt(pNotNull), pAssignOrDefault,pExpr) s
     public Pa<T3<Ast.DataType, Boolean, Ast.Expression>> pConstantDeclaration
             = new Pa<T3<Ast.DataType, Boolean, Ast.Expression>>() {
 
+                final Pa<T4<Ast.DataType, Boolean, String, Expression>> p
+                = c.seq4(pDataType, pBoptNotNull, pAssignOrDefault, pExpr);
+
                 @Override
                 public Res<T3<Ast.DataType, Boolean, Expression>> par(Seq s) {
-                    Res<String> r = c.forkw("constant").pa(s);
+                    Res<String> r = pkw_constant.pa(s);
                     if (r == null) {
                         return null;
                     }
-                    Res<T4<Ast.DataType, Boolean, String, Expression>> r2
-                    = c.seq4(pDataType, c.bopt(pNotNull), pAssignOrDefault, pExpr).pa(r.next);
+                    Res<T4<Ast.DataType, Boolean, String, Expression>> r2 = p.pa(r.next);
                     must(r2, r.next, "expecting constant declaration");
                     return new Res<T3<Ast.DataType, Boolean, Expression>>(new T3<Ast.DataType, Boolean, Expression>(r2.v.f1, r2.v.f2, r2.v.f4), r2.next);
                 }
@@ -942,17 +1167,17 @@ public class Parser {
                     = pVariableDeclaration.pa(r.next);
             if (r1 != null) {
                 Ast.Expression de = r1.v.f3 == null ? null : r1.v.f3.f2;
-                return new Res<Ast.Declaration>(new Ast.VariableDeclaration(r.v, r1.v.f1, r1.v.f2, false, de), r1.next);
+                return ranged(new Res<Ast.Declaration>(new Ast.VariableDeclaration(r.v, r1.v.f1, r1.v.f2, false, de), r1.next), s);
             }
             Res<T3<Ast.DataType, Boolean, Ast.Expression>> r2
                     = pConstantDeclaration.pa(r.next);
             if (r2 != null) {
-                return new Res<Ast.Declaration>(new Ast.VariableDeclaration(r.v, r2.v.f1, r2.v.f2, true, r2.v.f3), r2.next);
+                return ranged(new Res<Ast.Declaration>(new Ast.VariableDeclaration(r.v, r2.v.f1, r2.v.f2, true, r2.v.f3), r2.next), s);
             }
 
-            Res<String> r3 = c.forkw("exception").pa(r.next);
+            Res<String> r3 = pkw_exception.pa(r.next);
             if (r3 != null) {
-                return new Res<Ast.Declaration>(new Ast.ExceptionDeclaration(r.v), r3.next);
+                return ranged(new Res<Ast.Declaration>(new Ast.ExceptionDeclaration(r.v), r3.next), s);
             }
             return null;
         }
@@ -962,17 +1187,20 @@ public class Parser {
     //  tr(seq3(pIdent,pDataType,opt(seq3(bopt(pNotNull),pAssignOrDefault,pExpr))),
     public Pa<Ast.RecordField> pRecordField = new Pa<Ast.RecordField>() {
 
+        final Pa<T2<Ast.Ident, Ast.DataType>> p1 = c.seq2(pIdent, pDataType);
+        final Pa<T3<Boolean, String, Ast.Expression>> p2 = c.seq3(pBoptNotNull, pAssignOrDefault, pExpr);
+
         @Override
         public Res<Ast.RecordField> par(Seq s) {
-            Res<T2<Ast.Ident, Ast.DataType>> r = c.seq2(pIdent, pDataType).pa(s);
+            Res<T2<Ast.Ident, Ast.DataType>> r = p1.pa(s);
             if (r == null) {
                 return null;
             }
-            Res<T3<Boolean, String, Ast.Expression>> r2 = c.seq3(c.bopt(pNotNull), pAssignOrDefault, pExpr).pa(r.next);
+            Res<T3<Boolean, String, Ast.Expression>> r2 = p2.pa(r.next);
             if (r2 == null) {
-                return new Res<Ast.RecordField>(new Ast.RecordField(r.v.f1, r.v.f2, false, null), r.next);
+                return ranged(new Res<Ast.RecordField>(new Ast.RecordField(r.v.f1, r.v.f2, false, null), r.next), s);
             } else {
-                return new Res<Ast.RecordField>(new Ast.RecordField(r.v.f1, r.v.f2, r2.v.f1, r2.v.f3), r2.next);
+                return ranged(new Res<Ast.RecordField>(new Ast.RecordField(r.v.f1, r.v.f2, r2.v.f1, r2.v.f3), r2.next), s);
             }
         }
 
@@ -981,15 +1209,17 @@ public class Parser {
     public Pa<Ast.TypeDefinition> pRecordTypeDefinition
             = new Pa<Ast.TypeDefinition>() {
 
+                final Pa<List<Ast.RecordField>> p = c.sep1(pRecordField, c.pComma);
+
                 @Override
                 public Res<Ast.TypeDefinition> par(Seq s) {
-                    Res<String> r = c.forkw("record").pa(s);
+                    Res<String> r = pkw_record.pa(s);
                     if (r == null) {
                         return null;
                     }
-                    Res<List<Ast.RecordField>> r2 = c.withParensCommit(c.sep1(pRecordField, c.pComma), r.next);
+                    Res<List<Ast.RecordField>> r2 = c.withParensCommit(p, r.next);
                     must(r2, r.next, "expecting record fields");
-                    return new Res<Ast.TypeDefinition>(new Ast.RecordType(r2.v), r2.next);
+                    return ranged(new Res<Ast.TypeDefinition>(new Ast.RecordType(r2.v), r2.next), s);
                 }
             };
 
@@ -999,16 +1229,16 @@ public class Parser {
 
                 @Override
                 public Res<Ast.TypeDefinition> par(Seq s) {
-                    Res<String> r = c.forkw2("ref", "cursor").pa(s);
+                    Res<String> r = pkw_ref_cursor.pa(s);
                     if (r == null) {
                         return null;
                     }
-                    Res<String> r2 = c.forkw("return").pa(r.next);
+                    Res<String> r2 = pkw_return.pa(r.next);
                     if (r2 == null) {
-                        return new Res<Ast.TypeDefinition>(new Ast.RefCursorType(null), r.next);
+                        return ranged(new Res<Ast.TypeDefinition>(new Ast.RefCursorType(null), r.next), s);
                     } else {
-                        Res<Ast.DataType> r3 = c.mustp(pDataType, "datatype").pa(r2.next);
-                        return new Res<Ast.TypeDefinition>(new Ast.RefCursorType(r3.v), r3.next);
+                        Res<Ast.DataType> r3 = c.mustpa(pDataType, r2.next, "datatype");
+                        return ranged(new Res<Ast.TypeDefinition>(new Ast.RefCursorType(r3.v), r3.next), s);
                     }
                 }
             };
@@ -1019,19 +1249,23 @@ public class Parser {
      bopt(pNotNull),
      opt(commit(kw "index",seq2(kw "by",pDataType))))),*/
     public Pa<Ast.TypeDefinition> pNestetTableTypeDefinition = new Pa<Ast.TypeDefinition>() {
+
+        final Pa<T2<Ast.DataType, Boolean>> p1 = c.seq2(pDataType, pBoptNotNull);
+        final Pa<T3<String, String, Ast.DataType>> p2 = c.seq3(pkw_index, pkw_by, pDataType);
+
         @Override
         public Res<Ast.TypeDefinition> par(Seq s) {
-            Res<String> r = c.forkw2("table", "of").pa(s);
+            Res<String> r = pkw_table_of.pa(s);
             if (r == null) {
                 return null;
             }
-            Res<T2<Ast.DataType, Boolean>> r2 = c.seq2(pDataType, c.bopt(pNotNull)).pa(r.next);
+            Res<T2<Ast.DataType, Boolean>> r2 = p1.pa(r.next);
             must(r2, r.next, "datatype");
-            Res<T3<String, String, Ast.DataType>> r3 = c.seq3(pkw_index, pkw_by, pDataType).pa(r2.next);
+            Res<T3<String, String, Ast.DataType>> r3 = p2.pa(r2.next);
             if (r3 == null) {
-                return new Res<Ast.TypeDefinition>(new Ast.TableSimple(r2.v.f1, r2.v.f2), r2.next);
+                return ranged(new Res<Ast.TypeDefinition>(new Ast.TableSimple(r2.v.f1, r2.v.f2), r2.next), s);
             } else {
-                return new Res<Ast.TypeDefinition>(new Ast.TableIndexed(r2.v.f1, r2.v.f2, r3.v.f3), r3.next);
+                return ranged(new Res<Ast.TypeDefinition>(new Ast.TableIndexed(r2.v.f1, r2.v.f2, r3.v.f3), r3.next), s);
             }
         }
     };
@@ -1039,42 +1273,47 @@ public class Parser {
     //seq6(tLParen,pPlainInt,tRParen, kw "of",pDataType,bopt(pNotNull))),
     public Pa<Ast.TypeDefinition> pVarrayTypeDefinition = new Pa<Ast.TypeDefinition>() {
 
+        final Pa<String> p1 = c.or2(pkw_varray, pkw_varying_array);
+        final Pa<T3<String, Ast.DataType, Boolean>> p2 = c.seq3(pkw_of, pDataType, pBoptNotNull);
+
         @Override
         public Res<Ast.TypeDefinition> par(Seq s) {
-            Res<String> r = c.or2(pkw_varray, pkw_varying_array).pa(s);
+            Res<String> r = p1.pa(s);
             if (r == null) {
                 return null;
             }
             Res<Integer> r2 = c.withParensCommit(pNatural, r.next);
-            Res<T3<String, Ast.DataType, Boolean>> r3 = c.seq3(pkw_of, pDataType, c.bopt(pNotNull)).pa(r2.next);
-            return new Res<Ast.TypeDefinition>(new Ast.Varray(r3.v.f2, r2.v, r3.v.f3), r3.next);
+            Res<T3<String, Ast.DataType, Boolean>> r3 = p2.pa(r2.next);
+            return ranged(new Res<Ast.TypeDefinition>(new Ast.Varray(r3.v.f2, r2.v, r3.v.f3), r3.next), s);
         }
 
     };
 
+    final Pa<T2<Ast.Ident, String>> pIdentIs = c.seq2(pIdent, pkw_is);
+
     public Res<Ast.Declaration> paTypeDefinition(Seq s) {
         Res<String> r = pkw_type.pa(s);
         if (r == null) {
             return null;
         }
-        Res<T2<Ast.Ident, String>> ris = c.mustp(c.seq2(pIdent, pkw_is), "expecting 'bla is'").pa(r.next);
+        Res<T2<Ast.Ident, String>> ris = c.mustpa(pIdentIs, r.next, "expecting 'bla is'");
         Seq next = ris.next;
         Ast.Ident name = ris.v.f1;
         Res<Ast.TypeDefinition> r1 = pRecordTypeDefinition.pa(next);
         if (r1 != null) {
-            return new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, r1.v), r1.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, r1.v), r1.next), s);
         }
         Res<Ast.TypeDefinition> r2 = pRefCursorTypeDefinition.pa(next);
         if (r2 != null) {
-            return new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, r2.v), r2.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, r2.v), r2.next), s);
         }
         Res<Ast.TypeDefinition> r3 = pNestetTableTypeDefinition.pa(next);
         if (r3 != null) {
-            return new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, r3.v), r3.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, r3.v), r3.next), s);
         }
         Res<Ast.TypeDefinition> r4 = pVarrayTypeDefinition.pa(next);
         if (r4 != null) {
-            return new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, r4.v), r4.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, r4.v), r4.next), s);
         }
 
         return null;
@@ -1082,18 +1321,22 @@ public class Parser {
 
     public Pa<T2<Integer, Integer>> pRangeOption = new Pa<T2<Integer, Integer>>() {
 
+        final Pa<T3<Integer, String, Integer>> p = c.seq3(pInteger, c.pDotDot, pInteger);
+
         @Override
         protected Res<T2<Integer, Integer>> par(Seq s) {
             Res<String> r = pkw_range.pa(s);
             if (r == null) {
                 return new Res<T2<Integer, Integer>>(null, s);
             }
-            Res<T3<Integer, String, Integer>> r2 = c.seq3(pInteger, c.pDotDot, pInteger).pa(r.next);
+            Res<T3<Integer, String, Integer>> r2 = p.pa(r.next);
             must(r2, r.next, "expectint int .. int ");
             return new Res<T2<Integer, Integer>>(new T2<Integer, Integer>(r2.v.f1, r2.v.f3), r2.next);
         }
     };
 
+    final Pa<T3<Ast.DataType, T2<Integer, Integer>, Boolean>> pSubType = c.seq3(pDataType, pRangeOption, pBoptNotNull);
+
 //    fun pSubTypeDefinition s  =
 //    tr(commit(kw "subtype", seq4(pIdent,kw "is",pDataType,bopt(pNotNull))),
 //       fn (_,(name,_,dt,nn)) =>   TypeDefinition (name,SubType (dt,nn))) s
@@ -1102,30 +1345,32 @@ public class Parser {
         if (r == null) {
             return null;
         }
-        Res<T2<Ast.Ident, String>> ris = c.mustp(c.seq2(pIdent, pkw_is), "expecting '<subtypename> is'").pa(r.next);
+        Res<T2<Ast.Ident, String>> ris = c.mustpa(pIdentIs, r.next, "expecting '<subtypename> is'");
 
         Ast.Ident name = ris.v.f1;
 
-        Res<T3<Ast.DataType, T2<Integer, Integer>, Boolean>> r2 = c.seq3(pDataType, pRangeOption, c.bopt(pNotNull)).pa(ris.next);
-        return new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, new Ast.SubType(r2.v.f1, r2.v.f2, r2.v.f3)), r2.next);
+        Res<T3<Ast.DataType, T2<Integer, Integer>, Boolean>> r2 = pSubType.pa(ris.next);
+        Ast.SubType st = new Ast.SubType(r2.v.f1, r2.v.f2, r2.v.f3);
+        range(st, ris.next, r2.next);
+        return ranged(new Res<Ast.Declaration>(new Ast.TypeDeclaration(name, st), r2.next), s);
     }
 
     public Res<Ast.ParamMode> paParamModeOption(Seq s) {
         Res<String> r = pkw_in_out.pa(s);
         if (r != null) {
-            Res<Boolean> r2 = c.bopt(c.forkw("nocopy")).pa(r.next);
-            return new Res<Ast.ParamMode>(new Ast.ParamMode(Ast.ParamModeType.INOUT, r2.v), r2.next);
+            Res<Boolean> r2 = pBoptNocopy.pa(r.next);
+            return ranged(new Res<Ast.ParamMode>(new Ast.ParamMode(Ast.ParamModeType.INOUT, r2.v), r2.next), s);
         }
         Res<String> r3 = pkw_in.pa(s);
         if (r3 != null) {
-            return new Res<Ast.ParamMode>(new Ast.ParamMode(Ast.ParamModeType.IN, false), r3.next);
+            return ranged(new Res<Ast.ParamMode>(new Ast.ParamMode(Ast.ParamModeType.IN, false), r3.next), s);
         }
         Res<String> r4 = pkw_out.pa(s);
         if (r4 != null) {
-            Res<Boolean> r5 = c.bopt(pkw_nocopy).pa(r4.next);
-            return new Res<Ast.ParamMode>(new Ast.ParamMode(Ast.ParamModeType.OUT, r5.v), r5.next);
+            Res<Boolean> r5 = pBoptNocopy.pa(r4.next);
+            return ranged(new Res<Ast.ParamMode>(new Ast.ParamMode(Ast.ParamModeType.OUT, r5.v), r5.next), s);
         }
-        return new Res<Ast.ParamMode>(null, s);
+        return ranged(new Res<Ast.ParamMode>(null, s), s);
     }
 
 //    fun pCharacterSet s =
@@ -1137,13 +1382,15 @@ public class Parser {
         if (r == null) {
             return new Res<Boolean>(false, s);
         }
-        Res<String> r2 = c.mustp(c.forkw("any_cs"), "expecting 'any_cs'").pa(r.next);
+        Res<String> r2 = c.mustpa(pkw_any_cs, r.next, "expecting 'any_cs'");
         return new Res<Boolean>(true, r2.next);
     }
 
     //    seq5(pIdent,opt(pParamMode),pDataType,opt pCharacterSet,opt(commit(pAssignOrDefault,pExpr))),
     public Pa<Ast.Parameter> pParameter = new Pa<Ast.Parameter>() {
 
+        final Pa<Ast.Expression> pDefault = c.opt(c.commit(pAssignOrDefault, pExpr));
+
         @Override
         public Res<Ast.Parameter> par(Seq s) {
             Res<Ast.Ident> r = pIdent.pa(s);
@@ -1151,25 +1398,27 @@ public class Parser {
                 return null;
             }
             Res<Ast.ParamMode> r2 = paParamModeOption(r.next);
-            Res<Ast.DataType> r3 = c.mustp(pDataType, "expecting datatype").pa(r2.next);
+            Res<Ast.DataType> r3 = c.mustpa(pDataType, r2.next, "expecting datatype");
             Res<Boolean> r4 = paCSOption(r3.next);
-            Res<Ast.Expression> r5 = c.opt(c.commit(pAssignOrDefault, pExpr)).pa(r4.next);
-            return new Res<Ast.Parameter>(new Ast.Parameter(r.v, r3.v, r2.v, r5.v), r5.next);
+            Res<Ast.Expression> r5 = pDefault.pa(r4.next);
+            return ranged(new Res<Ast.Parameter>(new Ast.Parameter(r.v, r3.v, r2.v, r5.v), r5.next), s);
         }
     };
 
+    final Pa<List<Ast.Parameter>> pParameters = c.sep1(pParameter, c.pComma);
+
     public Res<List<String>> paFunctionAttributes(Seq s) {
         //kw "deterministic",kw "pipelined",kw "parallel_enable",kw "result_cache"]),
         List<String> l = new ArrayList<String>();
         Seq next = s;
         while (true) {
-            Res<String> r = c.token(TokenType.Ident).pa(next);
-            if (r != null && (r.v.equalsIgnoreCase("deterministic")
-                    || r.v.equalsIgnoreCase("pipelined")
-                    || r.v.equalsIgnoreCase("parallel_enable")
-                    || r.v.equalsIgnoreCase("result_cache"))) {
-                l.add(r.v.toLowerCase());
-                next = r.next;
+            int kw = next.head().kw;
+            if (kw == Keywords.DETERMINISTIC
+                    || kw == Keywords.PIPELINED
+                    || kw == Keywords.PARALLEL_ENABLE
+                    || kw == Keywords.RESULT_CACHE) {
+                l.add(Keywords.word(kw));
+                next = next.tail();
             } else {
                 break;
             }
@@ -1193,7 +1442,7 @@ public class Parser {
         }
         Res<Ast.Ident> r2 = pIdent.pa(r.next);
         must(r2, r.next, "ident");
-        Res<List<Ast.Parameter>> r3 = c.withParensCommit(c.sep1(pParameter, c.pComma), r2.next);
+        Res<List<Ast.Parameter>> r3 = c.withParensCommit(pParameters, r2.next);
         List<Ast.Parameter> params;
         Seq next;
         if (r3 == null) {
@@ -1206,7 +1455,8 @@ public class Parser {
         Res<String> r4 = pkw_return.pa(next);
         Res<Ast.DataType> r5 = pDataType.pa(r4.next);
         Res<List<String>> r6 = paFunctionAttributes(r5.next);
-        return new Res<Ast.FunctionHeading>(new Ast.FunctionHeading(r2.v, params, r5.v, r6.v), r6.next);
+        Ast.FunctionHeading h = new Ast.FunctionHeading(r2.v, params, r5.v, r6.v);
+        return ranged(new Res<Ast.FunctionHeading>(h, r6.next), s);
     }
 
     /*
@@ -1220,13 +1470,15 @@ public class Parser {
             return null;
         }
         Res<Ast.Ident> r2 = pIdent.pa(r.next);
-        Res<List<Ast.Parameter>> r3 = c.withParensCommit(c.sep1(pParameter, c.pComma), r2.next);
+        Res<List<Ast.Parameter>> r3 = c.withParensCommit(pParameters, r2.next);
 
+        Res<Ast.ProcedureHeading> res;
         if (r3 == null) {
-            return new Res<Ast.ProcedureHeading>(new Ast.ProcedureHeading(r2.v, new ArrayList<Ast.Parameter>()), r2.next);
+            res = new Res<Ast.ProcedureHeading>(new Ast.ProcedureHeading(r2.v, new ArrayList<Ast.Parameter>()), r2.next);
         } else {
-            return new Res<Ast.ProcedureHeading>(new Ast.ProcedureHeading(r2.v, r3.v), r3.next);
+            res = new Res<Ast.ProcedureHeading>(new Ast.ProcedureHeading(r2.v, r3.v), r3.next);
         }
+        return ranged(res, s);
     }
 
     Pa<Token> pNoSemi = new Pa<Token>() {
@@ -1246,6 +1498,8 @@ public class Parser {
      tr(commit(kw "pragma",seq2(pIdent,many(pNoSemi))),
      fn(_,(name,l)) => Pragma (name,l)) s
      */
+    final Pa<List<Token>> pNoSemis = c.many(pNoSemi);
+
     public Res<Ast.Declaration> paPragma(Seq s) {
         Res<String> r = pkw_pragma.pa(s);
         if (r == null) {
@@ -1255,15 +1509,15 @@ public class Parser {
             return paRestrictReferencesCommited(s);
         }
         Res<Ast.Ident> r1 = pIdent.pa(r.next);
-        Res<List<Token>> r2 = c.many(pNoSemi).pa(r1.next);
-        return new Res<Ast.Declaration>(new Ast.SimplePragma(r1.v, r2.v), r2.next);
+        Res<List<Token>> r2 = pNoSemis.pa(r1.next);
+        return ranged(new Res<Ast.Declaration>(new Ast.SimplePragma(r1.v, r2.v), r2.next), s);
     }
 
     final Pa<String> pRestrictReferencesMode = new Pa<String>() {
         @Override
         protected Res<String> par(Seq s) {
             if (s.head().ttype == TokenType.String) {
-                String s1 = s.head().str;
+                String s1 = s.head().str();
                 String s2 = s1.substring(1, s1.length() - 1);
                 return new Res<String>(s2.replace("''", "'"), s.tail());
             }
@@ -1275,9 +1529,11 @@ public class Parser {
         }
     };
 
+    final Pa<List<String>> pRestrictReferencesModes = c.sep1(pRestrictReferencesMode, c.pComma);
+
     public Res<Ast.Declaration> paRestrictReferencesCommited(Seq s) {
-        Res r = c.mustp(pkw2_pragma_restrict_references,
-                "expecting pragma restrict references").pa(s);
+        Res r = c.mustpa(pkw2_pragma_restrict_references, s,
+                "expecting pragma restrict references");
         Res r2 = c.pPOpen.pa(r.next);
         must(r2, r.next, "expecting paren open");
 
@@ -1295,11 +1551,11 @@ public class Parser {
         }
         Res r5 = c.pComma.pa(next);
         must(r5, next, "expecting ,");
-        Res<List<String>> r6 = c.sep1(pRestrictReferencesMode, c.pComma).pa(r5.next);
+        Res<List<String>> r6 = pRestrictReferencesModes.pa(r5.next);
         must(r6, r5.next, "at least one mode");
         Res r7 = c.pPClose.pa(r6.next);
         must(r7, r6.next, "expecting paren close");
-        return new Res<Ast.Declaration>(new Ast.PragmaRestrictReferences(ident, ident == null, r6.v), r7.next);
+        return ranged(new Res<Ast.Declaration>(new Ast.PragmaRestrictReferences(ident, ident == null, r6.v), r7.next), s);
     }
 
     public Res<List<Token>> paBalancedParenAndNoSemi(Seq s) {
@@ -1350,20 +1606,17 @@ public class Parser {
      */
 
     public Res<Ast.Statement> paSQLStatement(Seq s) {
-        if (s.head().ttype != TokenType.Ident) {
-            return null;
-        }
-        String a = s.head().str;
-        if (a.equalsIgnoreCase("insert")
-                || a.equalsIgnoreCase("update")
-                || a.equalsIgnoreCase("delete")
-                || a.equalsIgnoreCase("select")
-                || a.equalsIgnoreCase("merge")
-                || a.equalsIgnoreCase("with")) {
-            Res<List<Token>> r = paBalancedParenAndNoSemi(s);
-            return new Res<Ast.Statement>(new Ast.SqlStatement(r.v), r.next);
-        } else {
-            return null;
+        switch (s.head().kw) {
+            case Keywords.INSERT:
+            case Keywords.UPDATE:
+            case Keywords.DELETE:
+            case Keywords.SELECT:
+            case Keywords.MERGE:
+            case Keywords.WITH:
+                Res<List<Token>> r = paBalancedParenAndNoSemi(s);
+                return ranged(new Res<Ast.Statement>(new Ast.SqlStatement(r.v), r.next), s);
+            default:
+                return null;
         }
     }
 
@@ -1371,6 +1624,8 @@ public class Parser {
     //             fn (_,_,_,CString str) => ("JAVA",str)) s
     public Pa<T2<String, String>> pLang = new Pa<T2<String, String>>() {
 
+        final Pa<T3<String, String, String>> p = c.seq3(pkw_java, pkw_name, c.token(TokenType.String));
+
         @Override
         public Res<T2<String, String>> par(Seq s) {
             Res r = pkw_language.pa(s);
@@ -1378,7 +1633,7 @@ public class Parser {
                 return null;
             }
             // fixme: java is fixed? 
-            Res<T3<String, String, String>> r2 = c.seq3(c.forkw("java"), c.forkw("name"), c.token(TokenType.String)).pa(r.next);
+            Res<T3<String, String, String>> r2 = p.pa(r.next);
             must(r2, r.next, "expecting java name '...' ");
             return new Res<T2<String, String>>(new T2<String, String>("java", r2.v.f3), r2.next);
         }
@@ -1397,11 +1652,11 @@ public class Parser {
         }
         Res<String> r2 = pIsOrAs.pa(r.next);
         if (r2 == null) {
-            return new Res<Ast.Declaration>(new Ast.FunctionDeclaration(r.v), r.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.FunctionDeclaration(r.v), r.next), s);
         } else {
             Res<T2<String, String>> r3 = pLang.pa(r2.next);
             must(r3, r2.next, "java proc");
-            return new Res<Ast.Declaration>(new Ast.ExtFunctionDefinition(r.v, r3.v.f1, r3.v.f2), r3.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.ExtFunctionDefinition(r.v, r3.v.f1, r3.v.f2), r3.next), s);
         }
     }
 
@@ -1419,11 +1674,11 @@ public class Parser {
         }
         Res<String> r2 = pIsOrAs.pa(r.next);
         if (r2 == null) {
-            return new Res<Ast.Declaration>(new Ast.ProcedureDeclaration(r.v), r.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.ProcedureDeclaration(r.v), r.next), s);
         } else {
             Res<T2<String, String>> r3 = pLang.pa(r2.next);
             must(r3, r2.next, "java proc");
-            return new Res<Ast.Declaration>(new Ast.ExtProcedureDefinition(r.v, r3.v.f1, r3.v.f2), r3.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.ExtProcedureDefinition(r.v, r3.v.f1, r3.v.f2), r3.next), s);
         }
     }
 
@@ -1433,10 +1688,10 @@ public class Parser {
             return null;
         }
         Res<Ast.Ident> rn = pIdent.pa(r.next);
-        Res<List<Ast.Parameter>> r3 = c.withParensCommit(c.sep1(pParameter, c.pComma), rn.next);
+        Res<List<Ast.Parameter>> r3 = c.withParensCommit(pParameters, rn.next);
         Res r_is = pkw_is.pa(r3 == null ? rn.next : r3.next);
         Res<List<Token>> rsql = paBalancedParenAndNoSemi(r_is.next);
-        return new Res<Ast.Declaration>(new Ast.CursorDefinition(rn.v, r3 == null ? null : r3.v, rsql.v), rsql.next);
+        return ranged(new Res<Ast.Declaration>(new Ast.CursorDefinition(rn.v, r3 == null ? null : r3.v, rsql.v), rsql.next), s);
     }
 
     /*
@@ -1456,26 +1711,23 @@ public class Parser {
         }
 
         public Res<Ast.Declaration> par(Seq s) {
-            Res<String> r = justkw.pa(s);
-            if (r != null) {
-                String word = r.v.toLowerCase();
-                if (word.equals("begin") || word.equals("end")) {
+            switch (s.head().kw) {
+                case Keywords.BEGIN:
+                case Keywords.END:
                     return null;
-                } else if (word.equals("type")) {
+                case Keywords.TYPE:
                     return paTypeDefinition(s);
-                } else if (word.equals("subtype")) {
+                case Keywords.SUBTYPE:
                     return paSubTypeDeclaration(s);
-                } else if (word.equals("procedure")) {
+                case Keywords.PROCEDURE:
                     return paProcedureDefinitionOrDeclaration(s);
-                } else if (word.equals("function")) {
+                case Keywords.FUNCTION:
                     return paFunctionDefinitionOrDeclaration(s);
-                } else if (word.equals("pragma")) {
+                case Keywords.PRAGMA:
                     return paPragma(s);
-                } else if (word.equals("cursor")) {
+                case Keywords.CURSOR:
                     return paCursorDefinition(s);
-                } else {
-                    ;
-                }
+                default:
             }
             // variable or exception declaration
             Res<Ast.Declaration> ritem = pItemDeclaration.pa(s);
@@ -1495,16 +1747,94 @@ public class Parser {
      *)
      */
     public Res<List<Ast.Declaration>> paDeclarations(Seq s) {
+        checkSkeleton(s);
         List<Ast.Declaration> res = new ArrayList<Ast.Declaration>();
         Seq seq = s;
         while (true) {
-            Res<Ast.Declaration> r = pDeclaration.pa(seq);
-            if (r == null) {
-                return new Res<List<Ast.Declaration>>(res, seq);
+            Res<Ast.Declaration> r;
+            Res<String> rs;
+            try {
+                r = pDeclaration.pa(seq);
+                if (r == null) {
+                    if (errors == null || endsDeclarations(seq.head())) {
+                        return new Res<List<Ast.Declaration>>(res, seq);
+                    }
+                    throw new ParseException("expecting a declaration", seq);
+                }
+                rs = c.mustpa(c.pSemi, r.next, "expecting a ;");
+            } catch (ParseException e) {
+                if (errors == null) {
+                    throw e;
+                }
+                Seq next = resync(seq, e);
+                List<Token> skipped = new ArrayList<Token>();
+                for (int i = seq.index(); i < next.index(); i++) {
+                    skipped.add(seq.at(i).head());
+                }
+                Ast.ErrorDeclaration ed = new Ast.ErrorDeclaration(e, skipped);
+                range(ed, seq, next);
+                res.add(ed);
+                errors.add(e);
+                seq.tokens().resetFail();
+                seq = next;
+                seq.commit();
+                continue;
             }
-            Res rs = c.mustp(c.pSemi, "expecting a ;").pa(r.next);
             res.add(r.v);
             seq = rs.next;
+            seq.commit();
+        }
+    }
+
+    private static boolean endsDeclarations(Token t) {
+        return t.kw == Keywords.BEGIN || t.kw == Keywords.END
+                || t.ttype == TokenType.TheEnd || t.ttype == TokenType.Div;
+    }
+
+    // where to go on after the declaration at s failed with e, the search
+    // starts at the error. If the declaration is a procedure or function
+    // this is after its END name;, else after the next ; . Parsing also goes
+    // on at a PROCEDURE or FUNCTION after a ; and at the END of the
+    // enclosing unit: END name; followed by the end or a slash
+    Seq resync(Seq s, ParseException e) {
+        Token t0 = s.head();
+        boolean unit = t0.kw == Keywords.PROCEDURE || t0.kw == Keywords.FUNCTION;
+        Symbol name = unit ? s.tail().head().sym : null;
+        Seq x = s.at(Math.max(e.index, s.index() + 1));
+        Token prev = x.at(x.index() - 1).head();
+        while (true) {
+            Token t = x.head();
+            if (t.ttype == TokenType.TheEnd) {
+                return x;
+            }
+            if ((t.kw == Keywords.PROCEDURE || t.kw == Keywords.FUNCTION) && prev.ttype == TokenType.Semi) {
+                return x;
+            }
+            if (!unit && (t.kw == Keywords.BEGIN || t.kw == Keywords.PROCEDURE || t.kw == Keywords.FUNCTION)) {
+                return x;
+            }
+            if (!unit && t.ttype == TokenType.Semi) {
+                return x.tail();
+            }
+            if (t.kw == Keywords.END) {
+                Seq y = x.tail();
+                Symbol end = null;
+                if (y.head().ttype == TokenType.Ident || y.head().ttype == TokenType.QIdent) {
+                    end = y.head().sym;
+                    y = y.tail();
+                }
+                if (y.head().ttype == TokenType.Semi) {
+                    TokenType after = y.tail().head().ttype;
+                    if (after == TokenType.TheEnd || after == TokenType.Div) {
+                        return x;
+                    }
+                    if (unit && end != null && end == name) {
+                        return y.tail();
+                    }
+                }
+            }
+            prev = t;
+            x = x.tail();
         }
     }
 
@@ -1517,8 +1847,11 @@ public class Parser {
      pDeclareSection,
      seq3(kw "end",opt(pIdent),tSemi)),
      */
+    final Pa<String> pOptInvokerClause = c.opt(pInvokerClause);
+    final Pa<T3<String, Ast.Ident, String>> pEndNameSemi = c.seq3(pkw_end, pOptIdent, c.pSemi);
+
     public Res<Ast.PackageSpec> paPackageSpec(Seq s) {
-        Res<String> r = c.forkw("package").pa(s);
+        Res<String> r = pkw_package.pa(s);
         if (r == null) {
             return null;
         }
@@ -1526,12 +1859,12 @@ public class Parser {
         if (ro == null) {
             return null;
         }
-        Res<String> ric = c.opt(pInvokerClause).pa(ro.next);
-        Res<String> risas = c.mustp(pIsOrAs, "is or as").pa(ric.next);
+        Res<String> ric = pOptInvokerClause.pa(ro.next);
+        Res<String> risas = c.mustpa(pIsOrAs, ric.next, "is or as");
         Res<List<Ast.Declaration>> rde = paDeclarations(risas.next);
-        Res<T3<String, Ast.Ident, String>> rend = c.seq3(c.forkw("end"), c.opt(pIdent), c.pSemi).pa(rde.next);
+        Res<T3<String, Ast.Ident, String>> rend = pEndNameSemi.pa(rde.next);
         must(rend, rde.next, "end [name] ;");
-        return new Res<Ast.PackageSpec>(new Ast.PackageSpec(ro.v, rde.v, ric.v), rend.next);
+        return ranged(new Res<Ast.PackageSpec>(new Ast.PackageSpec(ro.v, rde.v, ric.v), rend.next), s);
     }
 
     public Pa<Ast.PackageSpec> pCRPackage = new Pa<Ast.PackageSpec>() {
@@ -1581,73 +1914,83 @@ public class Parser {
     }
 
     public Res<Ast.Statement> parseStatement(Seq s) {
-        Res<String> r = justkw.pa(s);
-        if (r != null) {
-            if (r.v.equals("end") || r.v.equals("exception") || r.v.equals("when") || r.v.equals("else") || r.v.equals("elsif")) {
+        switch (s.head().kw) {
+            case Keywords.END:
+            case Keywords.EXCEPTION:
+            case Keywords.WHEN:
+            case Keywords.ELSE:
+            case Keywords.ELSIF:
                 return null;
-            } else if (r.v.equals("null")) {
-                return new Res<Statement>(new Ast.NullStatement(), r.next);
-            } else if (r.v.equals("savepoint")) {
+            case Keywords.NULL:
+                return ranged(new Res<Statement>(new Ast.NullStatement(), s.tail()), s);
+            case Keywords.SAVEPOINT:
                 return paSavePoint(s);
-            } else if (r.v.equals("rollback")) {
+            case Keywords.ROLLBACK:
                 return paRollback(s);
-            } else if (r.v.equals("begin")) {
-                return paBlock_committed(s);
-            } else if (r.v.equals("declare")) {
+            case Keywords.BEGIN:
+            case Keywords.DECLARE:
                 return paBlock_committed(s);
-            } else if (r.v.equals("for")) {
+            case Keywords.FOR:
                 return paForLoop(s);
-            } else if (r.v.equals("loop")) {
+            case Keywords.LOOP:
                 return paSimpleLoop_comitted(s);
-            } else if (r.v.equals("while")) {
+            case Keywords.WHILE:
                 return paWhileLoopStatement(s);
-            } else if (r.v.equals("case")) {
+            case Keywords.CASE:
                 return paCaseStatement(s);
-            } else if (r.v.equals("raise")) {
+            case Keywords.RAISE:
                 return paRaiseStatement(s);
-            } else if (r.v.equals("return")) {
+            case Keywords.RETURN:
                 return paReturnStatement(s);
-            } else if (r.v.equals("open")) {
+            case Keywords.OPEN:
                 return paOpenStatement(s);
-            } else if (r.v.equals("close")) {
+            case Keywords.CLOSE:
                 return paCloseStatement(s);
-            } else if (r.v.equals("if")) {
+            case Keywords.IF:
                 return paIfStatement(s);
-            } else if (r.v.equals("fetch")) {
+            case Keywords.FETCH:
                 return paFetchStatement(s);
-            } else if (r.v.equals("exit")) {
+            case Keywords.EXIT:
                 return paExitStatement(s);
-            } else if (r.v.equals("continue")) {
+            case Keywords.CONTINUE:
                 return paContinueStatement(s);
-            } else if (r.v.equals("pipe")) {
+            case Keywords.PIPE:
                 return paPipeRowStatement(s);
-            } else if (r.v.equals("execute")) {
+            case Keywords.EXECUTE:
                 return paExecuteImmediate(s);
-            } else if (r.v.equals("goto")) {
+            case Keywords.GOTO:
                 return paGotoStatement(s);
-            } else if (r.v.equals("forall")) {
+            case Keywords.FORALL:
                 return paForAllStatement(s);
-            } else if (r.v.equals("insert") || r.v.equals("update") || r.v.equals("delete") || r.v.equals("merge") || r.v.equals("select") || r.v.equals("with")) {// with q as (select * from dual) select dummy fromdual into bla from q:
+            case Keywords.INSERT:
+            case Keywords.UPDATE:
+            case Keywords.DELETE:
+            case Keywords.MERGE:
+            case Keywords.SELECT:
+            case Keywords.WITH:
+                // with q as (select * from dual) select dummy fromdual into bla from q:
                 // is a valid select sql statement, to be exact we should check
                 // that with is not a procedure or variable name
-
                 return paSQLStatement(s);
-            }
+            default:
+                return paAssignOrCallStatement(s);
         }
-        return paAssignOrCallStatement(s);
     }
 
+    final Pa<T2<String, Ast.Ident>> pSavepoint = c.seq2(pkw_savepoint, pIdent);
+    final Pa<T2<String, T2<String, Ast.Ident>>> pRollback = c.seq2(pkw_rollback, c.opt(c.seq2(pkw_to, pIdent)));
+
     public Res<Ast.Statement> paSavePoint(Seq s) {
-        Res<T2<String, Ast.Ident>> r = c.seq2(c.forkw("savepoint"), pIdent).pa(s);
-        return new Res<Ast.Statement>(new Ast.Savepoint(r.v.f2), r.next);
+        Res<T2<String, Ast.Ident>> r = pSavepoint.pa(s);
+        return ranged(new Res<Ast.Statement>(new Ast.Savepoint(r.v.f2), r.next), s);
     }
 
     public Res<Ast.Statement> paRollback(Seq s) {
-        Res<T2<String, T2<String, Ast.Ident>>> r = c.seq2(c.forkw("rollback"), c.opt(c.seq2(c.forkw("to"), pIdent))).pa(s);
+        Res<T2<String, T2<String, Ast.Ident>>> r = pRollback.pa(s);
         if (r.v.f2 == null) {
-            return new Res<Ast.Statement>(new Ast.Rollback(null), r.next);
+            return ranged(new Res<Ast.Statement>(new Ast.Rollback(null), r.next), s);
         } else {
-            return new Res<Ast.Statement>(new Ast.Rollback(r.v.f2.f2), r.next);
+            return ranged(new Res<Ast.Statement>(new Ast.Rollback(r.v.f2.f2), r.next), s);
         }
     }
 
@@ -1656,8 +1999,8 @@ public class Parser {
         if (r == null) {
             return null;
         }
-        Res<String> rs = c.mustp(justkw, "just a word").pa(r.next);
-        return new Res<Ast.Statement>(new Ast.GotoStatement(rs.v), rs.next);
+        Res<String> rs = c.mustpa(justkw, r.next, "just a word");
+        return ranged(new Res<Ast.Statement>(new Ast.GotoStatement(rs.v), rs.next), s);
     }
 
     Res<Ast.Statement> paAssignOrCallStatement(Seq s) {
@@ -1667,10 +2010,12 @@ public class Parser {
         }
         Res r2 = c.pAssign.pa(r.next);
         if (r2 == null) {
-            return new Res<Ast.Statement>(new Ast.ProcedureCall(r.v), r.next);
+            return ranged(new Res<Ast.Statement>(new Ast.ProcedureCall(r.v), r.next), s);
         } else {
-            Res<Ast.Expression> re = c.mustp(pExpr, "expecting expression").pa(r2.next);
-            return new Res<Ast.Statement>(new Ast.Assignment(new Ast.LValue(r.v), re.v), re.next);
+            Res<Ast.Expression> re = c.mustpa(pExpr, r2.next, "expecting expression");
+            Ast.LValue lv = new Ast.LValue(r.v);
+            range(lv, s, r.next);
+            return ranged(new Res<Ast.Statement>(new Ast.Assignment(lv, re.v), re.next), s);
         }
     }
 
@@ -1684,6 +2029,7 @@ public class Parser {
             Res<String> r2 = c.pSemi.pa(r.next);
             must(r2, r.next, "expecting semi colon");
             l.add(r.v);
+            r2.next.commit();
             r = paStatement(r2.next);
             if (r == null) {
                 return new Res<List<Statement>>(l, r2.next);
@@ -1701,10 +2047,12 @@ public class Parser {
             if (r == null) {
                 return null;
             }
-            return new Res<Ast.QualId>(new Ast.QualId(r.v), r.next);
+            return ranged(new Res<Ast.QualId>(new Ast.QualId(r.v), r.next), s);
         }
     };
 
+    final Pa<List<Ast.QualId>> pQualIdsOr = c.sep1(pQualId, pkw_or);
+
     Res<Ast.ExceptionHandler> paOneException(Seq s) {
         Res<String> r = pkw_when.pa(s);
         if (r == null) {
@@ -1717,7 +2065,7 @@ public class Parser {
             el = null;
             next = r2.next;
         } else {
-            Res<List<Ast.QualId>> r3 = c.sep1(pQualId, pkw_or).pa(r.next);
+            Res<List<Ast.QualId>> r3 = pQualIdsOr.pa(r.next);
             must(r3, r.next, "exception list with or");
             el = r3.v;
             next = r3.next;
@@ -1725,13 +2073,13 @@ public class Parser {
         Res<String> r4 = pkw_then.pa(next);
         must(r4, next, "expecting then");
         Res<List<Ast.Statement>> rs = paStatementList(r4.next);
-        return new Res<Ast.ExceptionHandler>(new Ast.ExceptionHandler(el, rs.v), rs.next);
+        return ranged(new Res<Ast.ExceptionHandler>(new Ast.ExceptionHandler(el, rs.v), rs.next), s);
     }
 
     Res<Ast.ExceptionBlock> paExceptionBlockOption(Seq s) {
-        Res<String> r = c.forkw("exception").pa(s);
+        Res<String> r = pkw_exception.pa(s);
         if (r == null) {
-            return new Res<Ast.ExceptionBlock>(null, s);
+            return ranged(new Res<Ast.ExceptionBlock>(null, s), s);
         }
         List<Ast.ExceptionHandler> l = new ArrayList<Ast.ExceptionHandler>();
         s = r.next;
@@ -1762,9 +2110,11 @@ public class Parser {
             l2.add(l.get(l.size() - 1));
             others = null;
         }
-        return new Res<Ast.ExceptionBlock>(new Ast.ExceptionBlock(l2, others), s);
+        return ranged(new Res<Ast.ExceptionBlock>(new Ast.ExceptionBlock(l2, others), s), s);
     }
 
+    final Pa<T2<String, Ast.Ident>> pEndName = c.seq2(pkw_end, pOptIdent);
+
     Res<T2<List<Ast.Statement>, Ast.ExceptionBlock>> paBody(Seq s) {
         Res r = pkw_begin.pa(s);
         if (r == null) {
@@ -1773,7 +2123,7 @@ public class Parser {
         Res<List<Ast.Statement>> rs = paStatementList(r.next);
         must(rs, r.next, "statement list");
         Res<Ast.ExceptionBlock> reb = paExceptionBlockOption(rs.next);
-        Res rend = c.mustp(c.seq2(pkw_end, c.opt(pIdent)), "expect end").pa(reb.next);
+        Res rend = c.mustpa(pEndName, reb.next, "expect end");
         return new Res<T2<List<Statement>, Ast.ExceptionBlock>>(new T2<List<Statement>, Ast.ExceptionBlock>(rs.v, reb.v), rend.next);
     }
 
@@ -1793,20 +2143,21 @@ public class Parser {
         must(rse, rd.next, "expecting a begin");
 //        Res rend = c.mustp(c.seq2(pkw_end, c.opt(pIdent)), "expect end").pa(rse.next);
         Ast.Block block = new Ast.Block(rd.v, rse.v.f1, rse.v.f2);
-        return new Res<Ast.Statement>(new Ast.BlockStatement(block), rse.next);
+        range(block, s, rse.next);
+        return ranged(new Res<Ast.Statement>(new Ast.BlockStatement(block), rse.next), s);
     }
 
     Res<List<Ast.Statement>> paLoopBody_comitted(Seq s) {
-        Res r1 = c.mustp(pkw_loop, "expecting loop").pa(s);
+        Res r1 = c.mustpa(pkw_loop, s, "expecting loop");
         Res<List<Ast.Statement>> r2 = paStatementList(r1.next);
-        Res re = c.mustp(pkw_end_loop, "expecting end loop").pa(r2.next);
-        Res re2 = c.opt(pIdent).pa(re.next);
+        Res re = c.mustpa(pkw_end_loop, r2.next, "expecting end loop");
+        Res re2 = pOptIdent.pa(re.next);
         return new Res<List<Statement>>(r2.v, re2.next);
     }
 
     Res<Ast.Statement> paSimpleLoop_comitted(Seq s) {
         Res<List<Ast.Statement>> r2 = paLoopBody_comitted(s);
-        return new Res<Ast.Statement>(new Ast.BasicLoopStatement(r2.v), r2.next);
+        return ranged(new Res<Ast.Statement>(new Ast.BasicLoopStatement(r2.v), r2.next), s);
     }
 
     Res<Ast.Statement> paWhileLoopStatement(Seq s) {
@@ -1815,9 +2166,11 @@ public class Parser {
         Res<Ast.Expression> re = pExpr.pa(r.next);
         must(re, r.next, "expecting an expression");
         Res<List<Ast.Statement>> rl = paLoopBody_comitted(re.next);
-        return new Res<Ast.Statement>(new Ast.WhileLoopStatement(re.v, rl.v), rl.next);
+        return ranged(new Res<Ast.Statement>(new Ast.WhileLoopStatement(re.v, rl.v), rl.next), s);
     }
 
+    final Pa<T3<Ast.Expression, String, Ast.Expression>> pBounds = c.seq3(pExpr, c.pDotDot, pExpr);
+
     Res<Ast.Statement> paForAllStatement(Seq s) {
         Res r = pkw_forall.pa(s);
         if (r == null) {
@@ -1825,9 +2178,11 @@ public class Parser {
         }
         Res<Ast.Ident> rident = pIdent.pa(r.next);
         Res rin = pkw_in.pa(rident.next);
-        Res<T3<Ast.Expression, String, Ast.Expression>> rbounds = c.seq3(pExpr, c.pDotDot, pExpr).pa(rin.next);
+        Res<T3<Ast.Expression, String, Ast.Expression>> rbounds = pBounds.pa(rin.next);
         Res<List<Token>> rsql = paBalancedParenAndNoSemi(rbounds.next);
-        return new Res<Ast.Statement>(new Ast.ForAllStatement(rident.v, new Ast.FromToBounds(rbounds.v.f1, rbounds.v.f3), rsql.v), rsql.next);
+        Ast.FromToBounds bounds = new Ast.FromToBounds(rbounds.v.f1, rbounds.v.f3);
+        range(bounds, rin.next, rbounds.next);
+        return ranged(new Res<Ast.Statement>(new Ast.ForAllStatement(rident.v, bounds, rsql.v), rsql.next), s);
 
     }
 
@@ -1836,9 +2191,9 @@ public class Parser {
         Res<Ast.Ident> rident = pIdent.pa(r.next);
         Res rin = pkw_in.pa(rident.next);
         {
-            Res resel = c.seq2(c.pPOpen, pkw_select).pa(rin.next);
+            Res resel = pPOpenSelect.pa(rin.next);
             if (resel == null) {
-                resel = c.seq2(c.pPOpen, pkw_with).pa(rin.next);
+                resel = pPOpenWith.pa(rin.next);
             }
             if (resel != null) {
                 // skip the starting paren !
@@ -1847,25 +2202,27 @@ public class Parser {
                 // eat the end paren
                 Res pc = c.pPClose.pa(rsql.next);
                 Res<List<Ast.Statement>> rl = paLoopBody_comitted(pc.next);
-                return new Res<Ast.Statement>(new Ast.SelectLoopStatement(rident.v, rsql.v, rl.v), rl.next);
+                return ranged(new Res<Ast.Statement>(new Ast.SelectLoopStatement(rident.v, rsql.v, rl.v), rl.next), s);
             }
         }
         {
+            int m = mark();
             Res<Ast.Expression> rcp = pExpr.pa(rin.next);
             if (rcp != null) {
                 if (pkw_loop.pa(rcp.next) != null) {
                     Res<List<Ast.Statement>> rl = paLoopBody_comitted(rcp.next);
-                    return new Res<Ast.Statement>(new Ast.CursorLoopStatement(rident.v, rcp.v, rl.v), rl.next);
+                    return ranged(new Res<Ast.Statement>(new Ast.CursorLoopStatement(rident.v, rcp.v, rl.v), rl.next), s);
                 }
             }
+            backtrack(m);
         }
         {
-            Res<Boolean> rev = c.bopt(pkw_reverse).pa(rin.next);
+            Res<Boolean> rev = pBoptReverse.pa(rin.next);
             Res<T3<Ast.Expression, String, Ast.Expression>> rft
-                    = c.seq3(pExpr, c.pDotDot, pExpr).pa(rev.next);
+                    = pBounds.pa(rev.next);
             if (rft != null) {
                 Res<List<Ast.Statement>> rl = paLoopBody_comitted(rft.next);
-                return new Res<Ast.Statement>(new Ast.FromToLoopStatement(rident.v, rev.v, rft.v.f1, rft.v.f3, rl.v), rl.next);
+                return ranged(new Res<Ast.Statement>(new Ast.FromToLoopStatement(rident.v, rev.v, rft.v.f1, rft.v.f3, rl.v), rl.next), s);
             }
         }
         throw new ParseException("can not parse for loop", s);
@@ -1898,7 +2255,9 @@ public class Parser {
             Res<Expression> rex = pExpr.pa(rw.next);
             Res<String> rt = pkw_then.pa(rex.next);
             Res<List<Ast.Statement>> rsl = paStatementList(rt.next);
-            l.add(new Ast.ExprAndStatements(rex.v, rsl.v));
+            Ast.ExprAndStatements part = new Ast.ExprAndStatements(rex.v, rsl.v);
+            range(part, next, rsl.next);
+            l.add(part);
             next = rsl.next;
         }
         List<Ast.Statement> elsestmts;
@@ -1911,21 +2270,25 @@ public class Parser {
             elsestmts = null;
         }
         Res rend_case = pkw_end_case.pa(next);
-        Res rend_case2 = c.opt(pIdent).pa(rend_case.next);
+        Res rend_case2 = pOptIdent.pa(rend_case.next);
         if (m == null) {
-            return new Res<Ast.Statement>(new Ast.CaseCondStatement(l, elsestmts), rend_case2.next);
+            return ranged(new Res<Ast.Statement>(new Ast.CaseCondStatement(l, elsestmts), rend_case2.next), s);
         } else {
-            return new Res<Ast.Statement>(new Ast.CaseMatchStatement(m, l, elsestmts), rend_case2.next);
+            return ranged(new Res<Ast.Statement>(new Ast.CaseMatchStatement(m, l, elsestmts), rend_case2.next), s);
         }
     }
 
+    final Pa<Ast.QualId> pOptQualId = c.opt(pQualId);
+    final Pa<Ast.Expression> pOptExpr = c.opt(pExpr);
+    final Pa<T2<String, List<Ast.Expression>>> pOptUsing = c.opt(c.seq2(pkw_using, pExprList));
+
     public Res<Ast.Statement> paRaiseStatement(Seq s) {
         Res r = pkw_raise.pa(s);
         if (r == null) {
             return null;
         }
-        Res<Ast.QualId> ri = c.opt(pQualId).pa(r.next);
-        return new Res<Ast.Statement>(new Ast.RaiseStatement(ri.v), ri.next);
+        Res<Ast.QualId> ri = pOptQualId.pa(r.next);
+        return ranged(new Res<Ast.Statement>(new Ast.RaiseStatement(ri.v), ri.next), s);
     }
 
     public Res<Ast.Statement> paReturnStatement(Seq s) {
@@ -1933,8 +2296,8 @@ public class Parser {
         if (r == null) {
             return null;
         }
-        Res<Ast.Expression> ri = c.opt(pExpr).pa(r.next);
-        return new Res<Ast.Statement>(new Ast.ReturnStatement(ri.v), ri.next);
+        Res<Ast.Expression> ri = pOptExpr.pa(r.next);
+        return ranged(new Res<Ast.Statement>(new Ast.ReturnStatement(ri.v), ri.next), s);
     }
 
     public Res<Ast.Statement> paOpenStatement(Seq s) {
@@ -1949,27 +2312,27 @@ public class Parser {
         if (rf == null) {
             Res<List<Ast.ActualParam>> ra = paCallArgs(rq.next);
             if (ra == null) {
-                return new Res<Ast.Statement>(new Ast.OpenFixedCursorStatement(rq.v, null), rq.next);
+                return ranged(new Res<Ast.Statement>(new Ast.OpenFixedCursorStatement(rq.v, null), rq.next), s);
             } else {
-                return new Res<Ast.Statement>(new Ast.OpenFixedCursorStatement(rq.v, ra.v), ra.next);
+                return ranged(new Res<Ast.Statement>(new Ast.OpenFixedCursorStatement(rq.v, ra.v), ra.next), s);
             }
         } else {
             // ref cursor 
-            Res rselect = c.or2(pkw_select, pkw_with).pa(rf.next);
+            Res rselect = pkw_select_or_with.pa(rf.next);
             if (rselect == null) {
                 Res<Expression> rsql = pExpr.pa(rf.next);
                 Res<T2<String, List<Ast.Expression>>> rusing
-                        = c.opt(c.seq2(pkw_using, c.sep1(pExpr, c.pComma))).pa(rsql.next);
+                        = pOptUsing.pa(rsql.next);
                 List<Expression> usargs;
                 if (rusing.v == null) {
                     usargs = null;
                 } else {
                     usargs = rusing.v.f2;
                 }
-                return new Res<Ast.Statement>(new Ast.OpenDynamicRefCursorStatement(qualid, rsql.v, usargs), rusing.next);
+                return ranged(new Res<Ast.Statement>(new Ast.OpenDynamicRefCursorStatement(qualid, rsql.v, usargs), rusing.next), s);
             } else {
                 Res<List<Token>> rsql = paBalancedParenAndNoSemi(s);
-                return new Res<Ast.Statement>(new Ast.OpenStaticRefCursorStatement(qualid, rsql.v), rsql.next);
+                return ranged(new Res<Ast.Statement>(new Ast.OpenStaticRefCursorStatement(qualid, rsql.v), rsql.next), s);
             }
         }
     }
@@ -1979,8 +2342,8 @@ public class Parser {
         if (r == null) {
             return null;
         }
-        Res<Ast.QualId> rq = c.mustp(pQualId, "expecting qualid").pa(r.next);
-        return new Res<Ast.Statement>(new Ast.CloseStatement(rq.v), rq.next);
+        Res<Ast.QualId> rq = c.mustpa(pQualId, r.next, "expecting qualid");
+        return ranged(new Res<Ast.Statement>(new Ast.CloseStatement(rq.v), rq.next), s);
     }
 
     public Res<Ast.Statement> paIfStatement(Seq s) {
@@ -1989,10 +2352,12 @@ public class Parser {
             return null;
         }
         Res<Expression> re = pExpr.pa(r.next);
-        Res rt = c.mustp(pkw_then, "expecting then").pa(re.next);
+        Res rt = c.mustpa(pkw_then, re.next, "expecting then");
         Res<List<Ast.Statement>> rsl = paStatementList(rt.next);
         List<Ast.ExprAndStatements> l = new ArrayList<Ast.ExprAndStatements>();
-        l.add(new Ast.ExprAndStatements(re.v, rsl.v));
+        Ast.ExprAndStatements part = new Ast.ExprAndStatements(re.v, rsl.v);
+        range(part, s, rsl.next);
+        l.add(part);
 
         Seq next = rsl.next;
         //next is the loop variable
@@ -2004,7 +2369,9 @@ public class Parser {
             Res<Expression> rex = pExpr.pa(rw.next);
             Res<String> rt2 = pkw_then.pa(rex.next);
             Res<List<Ast.Statement>> rsl2 = paStatementList(rt2.next);
-            l.add(new Ast.ExprAndStatements(rex.v, rsl2.v));
+            part = new Ast.ExprAndStatements(rex.v, rsl2.v);
+            range(part, next, rsl2.next);
+            l.add(part);
             next = rsl2.next;
         }
         List<Ast.Statement> elsestmts;
@@ -2017,45 +2384,50 @@ public class Parser {
         } else {
             elsestmts = null;
         }
-        Res rend_if = pkw_end_if.pa(next);
-        return new Res<Ast.Statement>(new Ast.IfStatement(l, elsestmts), rend_if.next);
+        Res rend_if = c.mustpa(pkw_end_if, next, "expecting end if");
+        return ranged(new Res<Ast.Statement>(new Ast.IfStatement(l, elsestmts), rend_if.next), s);
     }
 
+    final Pa<List<Ast.LValue>> pLValues = c.sep1(pLValue, c.pComma);
+
     public Res<Ast.Statement> paFetchStatement(Seq s) {
         Res r = pkw_fetch.pa(s);
         if (r == null) {
             return null;
         }
         Res<Ast.QualId> rq = pQualId.pa(r.next);
-        Res<Boolean> rbc = c.bopt(pkw_bulk_collect).pa(rq.next);
+        Res<Boolean> rbc = pBoptBulkCollect.pa(rq.next);
         Res rinto = pkw_into.pa(rbc.next);
         must(rinto, rq.next, "into");
-        Res<List<Ast.LValue>> re = c.sep1(pLValue, c.pComma).pa(rinto.next);
+        Res<List<Ast.LValue>> re = pLValues.pa(rinto.next);
 
         Res rlimit = pkw_limit.pa(re.next);
         if (rlimit == null) {
-            return new Res<Ast.Statement>(new Ast.FetchStatement(rq.v, re.v, rbc.v, null), re.next);
+            return ranged(new Res<Ast.Statement>(new Ast.FetchStatement(rq.v, re.v, rbc.v, null), re.next), s);
         } else {
-            Res<Ast.Expression> rlimitexpr = c.mustp(pExpr, "expression").pa(rlimit.next);
-            return new Res<Ast.Statement>(
-                    new Ast.FetchStatement(rq.v, re.v, rbc.v, rlimitexpr.v), rlimitexpr.next);
+            Res<Ast.Expression> rlimitexpr = c.mustpa(pExpr, rlimit.next, "expression");
+            return ranged(new Res<Ast.Statement>(
+                    new Ast.FetchStatement(rq.v, re.v, rbc.v, rlimitexpr.v), rlimitexpr.next), s);
         }
     }
 
+    final Pa<T2<String, Ast.Expression>> pWhenExpr = c.seq2(pkw_when, pExpr);
+    final Pa<T2<String, Ast.Expression>> pOptWhenExpr = c.opt(pWhenExpr);
+
     public Res<Ast.Statement> paExitStatement(Seq s) {
         Res r = pkw_exit.pa(s);
         if (r == null) {
             return null;
         }
-        Res<Ast.Ident> ri = c.opt(pIdent).pa(r.next);
-        Res<T2<String, Ast.Expression>> rc = c.opt(c.seq2(pkw_when, pExpr)).pa(ri.next);
+        Res<Ast.Ident> ri = pOptIdent.pa(r.next);
+        Res<T2<String, Ast.Expression>> rc = pOptWhenExpr.pa(ri.next);
         Ast.Expression cond;
         if (rc.v == null) {
             cond = null;
         } else {
             cond = rc.v.f2;
         }
-        return new Res<Ast.Statement>(new Ast.ExitStatement(ri.v, cond), rc.next);
+        return ranged(new Res<Ast.Statement>(new Ast.ExitStatement(ri.v, cond), rc.next), s);
     }
 
     public Res<Ast.Statement> paContinueStatement(Seq s) {
@@ -2063,8 +2435,8 @@ public class Parser {
         if (r == null) {
             return null;
         }
-        Res<Ast.Ident> ri = c.opt(pIdent).pa(r.next);
-        Res<T2<String, Ast.Expression>> rc = c.seq2(pkw_when, pExpr).pa(ri.next);
+        Res<Ast.Ident> ri = pOptIdent.pa(r.next);
+        Res<T2<String, Ast.Expression>> rc = pWhenExpr.pa(ri.next);
         Ast.Expression cond;
         Seq next;
         if (rc == null) {
@@ -2074,7 +2446,7 @@ public class Parser {
             cond = rc.v.f2;
             next = rc.next;
         }
-        return new Res<Ast.Statement>(new Ast.ContinueStatement(ri.v, cond), next);
+        return ranged(new Res<Ast.Statement>(new Ast.ContinueStatement(ri.v, cond), next), s);
     }
 
     public Res<Ast.Statement> paPipeRowStatement(Seq s) {
@@ -2082,9 +2454,9 @@ public class Parser {
         if (r == null) {
             return null;
         }
-        Res<List<Ast.Expression>> re = c.sep1(pExpr, c.pComma).pa(r.next);
+        Res<List<Ast.Expression>> re = pExprList.pa(r.next);
         must(re, r.next, "list of expressions");
-        return new Res<Ast.Statement>(new Ast.PipeRowStatement(re.v), re.next);
+        return ranged(new Res<Ast.Statement>(new Ast.PipeRowStatement(re.v), re.next), s);
     }
 
     public Pa<Ast.ExecuteImmediateParameter> pExecuteImmediateParameter
@@ -2108,16 +2480,19 @@ public class Parser {
                     } else {
                         pt = r.v.paramModeType;
                     }
-                    return new Res<Ast.ExecuteImmediateParameter>(new Ast.ExecuteImmediateParameter(pt, rex.v), rex.next);
+                    return ranged(new Res<Ast.ExecuteImmediateParameter>(new Ast.ExecuteImmediateParameter(pt, rex.v), rex.next), s);
                 }
             };
 
+    final Pa<List<Ast.ExecuteImmediateParameter>> pExecuteImmediateParameters
+            = c.sep1(pExecuteImmediateParameter, c.pComma);
+
     public Res<List<Ast.ExecuteImmediateParameter>> paUsingOption(Seq s) {
         Res r = pkw_using.pa(s);
         if (r == null) {
             return new Res<List<Ast.ExecuteImmediateParameter>>(null, s);
         }
-        Res<List<Ast.ExecuteImmediateParameter>> rexl = c.sep1(pExecuteImmediateParameter, c.pComma).pa(r.next);
+        Res<List<Ast.ExecuteImmediateParameter>> rexl = pExecuteImmediateParameters.pa(r.next);
         // or just return rexl ?
         return new Res<List<Ast.ExecuteImmediateParameter>>(rexl.v, rexl.next);
     }
@@ -2139,6 +2514,8 @@ public class Parser {
         }
     }
 
+    final Pa<List<Ast.Ident>> pIdentList = c.sep1(pIdent, c.pComma);
+
     public Res<Ast.Statement> paExecuteImmediate(Seq s) {
         Res r = pkw_execute_immediate.pa(s);
         if (r == null) {
@@ -2147,20 +2524,20 @@ public class Parser {
         Res<Ast.Expression> rex = pExpr.pa(r.next);
         Res<Boolean> rinto = paIntoClause(rex.next);
         if (rinto != null) {
-            Res<List<Ast.LValue>> rl = c.sep1(pLValue, c.pComma).pa(rinto.next);
+            Res<List<Ast.LValue>> rl = pLValues.pa(rinto.next);
             Res<List<Ast.ExecuteImmediateParameter>> rexl = paUsingOption(rl.next);
-            return new Res<Ast.Statement>(new Ast.ExecuteImmediateInto(rex.v, rinto.v, rl.v, rexl.v), rexl.next);
+            return ranged(new Res<Ast.Statement>(new Ast.ExecuteImmediateInto(rex.v, rinto.v, rl.v, rexl.v), rexl.next), s);
         } else {
             // dml execute immediate mit returning clause
             Res<List<Ast.ExecuteImmediateParameter>> rexl = paUsingOption(rex.next);
             Res r_returning = pkw_returning.pa(rexl.next);
             if (r_returning == null) {
-                return new Res<Ast.Statement>(new Ast.ExecuteImmediateDML(rex.v, rexl.v, null, null), rexl.next);
+                return ranged(new Res<Ast.Statement>(new Ast.ExecuteImmediateDML(rex.v, rexl.v, null, null), rexl.next), s);
             } else {
-                Res<List<Ast.Ident>> rc = c.sep1(pIdent, c.pComma).pa(r_returning.next);
+                Res<List<Ast.Ident>> rc = pIdentList.pa(r_returning.next);
                 Res r_into = pkw_into.pa(rc.next);
-                Res<List<Ast.LValue>> rlv = c.sep1(pLValue, c.pComma).pa(r_into.next);
-                return new Res<Ast.Statement>(new Ast.ExecuteImmediateDML(rex.v, rexl.v, rc.v, rlv.v), rlv.next);
+                Res<List<Ast.LValue>> rlv = pLValues.pa(r_into.next);
+                return ranged(new Res<Ast.Statement>(new Ast.ExecuteImmediateDML(rex.v, rexl.v, rc.v, rlv.v), rlv.next), s);
             }
         }
     }
@@ -2200,13 +2577,237 @@ public class Parser {
      return new Res<>(new Ast.PLSQLBlock(rd.v, rse.v.f1, rse.v.f2), rend.next);
      }
      */
-    public Res< Ast.Block> paProcOrFunBody(Seq s) {
+    // the body in skeleton mode, it is parsed when it is resolved
+    Res<Ast.LazyBlock> paSkippedProcOrFunBody(Seq s) {
+        checkSkeleton(s);
+        if (ranges != null) {
+            // the body may be resolved on another thread
+            ranges.share();
+        }
+        Seq next = skipProcOrFunBody(s);
+        return ranged(new Res<Ast.LazyBlock>(new SkippedBlock(s, next), next), s);
+    }
+
+    // the body of a procedure or function, skipped in skeleton mode
+    final class SkippedBlock extends Ast.LazyBlock {
+
+        final Seq start; // after the is/as
+        final Seq end; // after the end [name]
+
+        SkippedBlock(Seq start, Seq end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Ast.Block materialize() {
+            return parseSkipped(Parser.this, this);
+        }
+    }
+
+    // the body is parsed on a view of the tokens, the failures for its error
+    // message are not mixed with those of the skeleton parse or other bodies
+    static Ast.Block parseSkipped(Parser p, SkippedBlock b) {
+        int from = b.start.index();
+        Seq s = new ViewTokens(b.start.tokens(), from, b.end.index() - from + 2).seq(from);
+        Res<Ast.Block> r = p.paProcOrFunBody(s);
+        if (r.next.index() != b.end.index()) {
+            throw new ParseException("body does not end where it was skipped to", r.next);
+        }
+        return r.v;
+    }
+
+    // replace the skipped bodies in a declaration list from a parser in skeleton
+    // mode by bodies parsed with this parser, the bodies are parsed concurrently
+    // on the executor. The result is in the order of decls.
+    // Not in recovery mode, a body with an error would have to become an
+    // Ast.ErrorDeclaration with the tokens of its heading
+    public List<Ast.Declaration> parseBodies(List<Ast.Declaration> decls, ExecutorService executor) {
+        if (errors != null) {
+            throw new IllegalStateException("parseBodies does not work in recovery mode");
+        }
+        if (ranges != null) {
+            ranges.share();
+        }
+        ArrayList<Future<Ast.Block>> futures = new ArrayList<Future<Ast.Block>>(decls.size());
+        for (Ast.Declaration d : decls) {
+            final Ast.LazyBlock b = d instanceof Ast.ProcedureDefinition ? ((Ast.ProcedureDefinition) d).getLazyBlock()
+                    : d instanceof Ast.FunctionDefinition ? ((Ast.FunctionDefinition) d).getLazyBlock()
+                    : null;
+            if (b instanceof SkippedBlock) {
+                futures.add(executor.submit(new Callable<Ast.Block>() {
+
+                    @Override
+                    public Ast.Block call() {
+                        return parseSkipped(Parser.this, (SkippedBlock) b);
+                    }
+                }));
+            } else {
+                futures.add(null);
+            }
+        }
+        ArrayList<Ast.Declaration> res = new ArrayList<Ast.Declaration>(decls.size());
+        for (int i = 0; i < decls.size(); i++) {
+            Ast.Declaration d = decls.get(i);
+            Future<Ast.Block> f = futures.get(i);
+            if (f == null) {
+                res.add(d);
+                continue;
+            }
+            Ast.Declaration n;
+            if (d instanceof Ast.ProcedureDefinition) {
+                n = new Ast.ProcedureDefinition(((Ast.ProcedureDefinition) d).procedureheading, getBody(f, futures));
+            } else {
+                n = new Ast.FunctionDefinition(((Ast.FunctionDefinition) d).functionheading, getBody(f, futures));
+            }
+            if (ranges != null && ranges.start(d) >= 0) {
+                ranges.add(n, ranges.start(d), ranges.end(d));
+            }
+            res.add(n);
+        }
+        return res;
+    }
+
+    private static Ast.Block getBody(Future<Ast.Block> f, List<Future<Ast.Block>> all) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            cancelAll(all);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            cancelAll(all);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static void cancelAll(List<Future<Ast.Block>> all) {
+        for (Future<Ast.Block> f : all) {
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    // a package body with the members parsed concurrently: a skeleton parse
+    // finds the members, then their bodies are parsed on the executor.
+    // In recovery mode the package body is parsed on this thread, see parseBodies
+    public Res<Ast.PackageBody> paPackageBodyParallel(Seq s, ExecutorService executor) {
+        if (errors != null) {
+            return pPackageBody.pa(s);
+        }
+        Parser sk = new Parser();
+        sk.setSkeleton(true);
+        sk.checkSkeleton(s);
+        sk.setSourceRanges(ranges);
+        sk.memo.setEnabled(memo.isEnabled());
+        Res<Ast.PackageBody> r = sk.pPackageBody.pa(s);
+        if (r == null) {
+            return null;
+        }
+        Ast.PackageBody b = r.v;
+        return ranged(new Res<Ast.PackageBody>(new Ast.PackageBody(b.name, parseBodies(b.declarations, executor),
+                b.statements, b.exceptionBlock), r.next), s);
+    }
+
+    // frames for skipProcOrFunBody
+    private static final int F_DECL = 0; // after is/as/declare, waiting for begin
+    private static final int F_BLOCK = 1; // after begin, case, if, loop
+
+    // skip the declarations and the body of a procedure or function by
+    // matching begin/end, case/end, if/end if and loop/end loop.
+    // s is the position after the is/as, the result the position after end [name]
+    Seq skipProcOrFunBody(Seq s) {
+        int[] stack = new int[16];
+        int depth = 0;
+        stack[depth++] = F_DECL;
+        // inside a declare section: a procedure or function heading was seen,
+        // an is/as at paren level 0 opens its body
+        boolean heading = false;
+        int parens = 0;
+        while (true) {
+            Token t = s.head();
+            switch (t.ttype) {
+                case TheEnd:
+                    throw new ParseException("unexpected end of input while skipping a body", s);
+                case LParen:
+                    parens++;
+                    break;
+                case RParen:
+                    parens--;
+                    break;
+                case Semi:
+                    heading = false;
+                    break;
+                case Ident:
+                    switch (t.kw) {
+                        case Keywords.PROCEDURE:
+                        case Keywords.FUNCTION:
+                            if (stack[depth - 1] == F_DECL) {
+                                heading = true;
+                                parens = 0;
+                            }
+                            break;
+                        case Keywords.IS:
+                        case Keywords.AS:
+                            if (heading && parens == 0) {
+                                heading = false;
+                                // external procedures have no body, they end with ;
+                                if (s.tail().head().kw != Keywords.LANGUAGE) {
+                                    if (depth == stack.length) {
+                                        stack = Arrays.copyOf(stack, depth * 2);
+                                    }
+                                    stack[depth++] = F_DECL;
+                                }
+                            }
+                            break;
+                        case Keywords.BEGIN:
+                        case Keywords.DECLARE:
+                        case Keywords.CASE:
+                        case Keywords.IF:
+                        case Keywords.LOOP:
+                            if (t.kw == Keywords.BEGIN && stack[depth - 1] == F_DECL) {
+                                stack[depth - 1] = F_BLOCK;
+                                break;
+                            }
+                            // a nested block
+                            if (depth == stack.length) {
+                                stack = Arrays.copyOf(stack, depth * 2);
+                            }
+                            stack[depth++] = t.kw == Keywords.DECLARE ? F_DECL : F_BLOCK;
+                            break;
+                        case Keywords.END:
+                            if (stack[depth - 1] == F_DECL) {
+                                throw new ParseException("expecting a begin", s);
+                            }
+                            depth--;
+                            int kw = s.tail().head().kw;
+                            if (kw == Keywords.IF || kw == Keywords.LOOP || kw == Keywords.CASE) {
+                                s = s.tail();
+                            } else if (depth == 0) {
+                                Res<Ast.Ident> rn = pIdent.pa(s.tail());
+                                return rn == null ? s.tail() : rn.next;
+                            }
+                            break;
+                        default:
+                    }
+                    break;
+                default:
+            }
+            s = s.tail();
+        }
+    }
+
+    public Res<Ast.Block> paProcOrFunBody(Seq s) {
         Res<List<Ast.Declaration>> rd = paDeclarations(s);
         Res<T2<List<Ast.Statement>, Ast.ExceptionBlock>> rse
                 = paBody(rd.next);
         must(rse, rd.next, "expecting a begin");
         //Res rend = c.mustp(c.seq2(pkw_end, c.opt(pIdent)), "expect end").pa(rse.next);
-        return new Res<Ast.Block>(new Ast.Block(rd.v, rse.v.f1, rse.v.f2), rse.next);
+        return ranged(new Res<Ast.Block>(new Ast.Block(rd.v, rse.v.f1, rse.v.f2), rse.next), s);
     }
 
     public Res<Ast.Declaration> paProcedureDefinitionOrDeclaration(Seq s) {
@@ -2216,15 +2817,19 @@ public class Parser {
         }
         Res r_is_or_as = pIsOrAs.pa(r.next);
         if (r_is_or_as == null) {
-            return new Res<Ast.Declaration>(new Ast.ProcedureDeclaration(r.v), r.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.ProcedureDeclaration(r.v), r.next), s);
         }
         if (pkw_language.pa(r_is_or_as.next) != null) {
             Res<T2<String, String>> r3 = pLang.pa(r_is_or_as.next);
             must(r3, r_is_or_as.next, "java proc");
-            return new Res<Ast.Declaration>(new Ast.ExtProcedureDefinition(r.v, r3.v.f1, r3.v.f2), r3.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.ExtProcedureDefinition(r.v, r3.v.f1, r3.v.f2), r3.next), s);
+        }
+        if (skeleton) {
+            Res<Ast.LazyBlock> rl = paSkippedProcOrFunBody(r_is_or_as.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.ProcedureDefinition(r.v, rl.v), rl.next), s);
         }
         Res<Ast.Block> rb = paProcOrFunBody(r_is_or_as.next);
-        return new Res<Ast.Declaration>(new Ast.ProcedureDefinition(r.v, rb.v), rb.next);
+        return ranged(new Res<Ast.Declaration>(new Ast.ProcedureDefinition(r.v, rb.v), rb.next), s);
     }
 
     public Res<Ast.Declaration> paFunctionDefinitionOrDeclaration(Seq s) {
@@ -2234,15 +2839,19 @@ public class Parser {
         }
         Res r_is_or_as = pIsOrAs.pa(r.next);
         if (r_is_or_as == null) {
-            return new Res<Ast.Declaration>(new Ast.FunctionDeclaration(r.v), r.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.FunctionDeclaration(r.v), r.next), s);
         }
         if (pkw_language.pa(r_is_or_as.next) != null) {
             Res<T2<String, String>> r3 = pLang.pa(r_is_or_as.next);
             must(r3, r_is_or_as.next, "java proc");
-            return new Res<Ast.Declaration>(new Ast.ExtFunctionDefinition(r.v, r3.v.f1, r3.v.f2), r3.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.ExtFunctionDefinition(r.v, r3.v.f1, r3.v.f2), r3.next), s);
+        }
+        if (skeleton) {
+            Res<Ast.LazyBlock> rl = paSkippedProcOrFunBody(r_is_or_as.next);
+            return ranged(new Res<Ast.Declaration>(new Ast.FunctionDefinition(r.v, rl.v), rl.next), s);
         }
         Res<Ast.Block> rb = paProcOrFunBody(r_is_or_as.next);
-        return new Res<Ast.Declaration>(new Ast.FunctionDefinition(r.v, rb.v), rb.next);
+        return ranged(new Res<Ast.Declaration>(new Ast.FunctionDefinition(r.v, rb.v), rb.next), s);
     }
 
     /*
@@ -2265,16 +2874,16 @@ public class Parser {
                 return null;
             }
             Res<Ast.ObjectName> rn = paObjectName(r.next);
-            Res r2 = c.mustp(pIsOrAs, "is or as").pa(rn.next);
+            Res r2 = c.mustpa(pIsOrAs, rn.next, "is or as");
             Res<List<Ast.Declaration>> rdecls = paDeclarations(r2.next);
             if (pkw_begin.pa(rdecls.next) == null) {
-                Res rend = c.mustp(c.seq2(pkw_end, c.opt(pIdent)), "expect end").pa(rdecls.next);
-                Res rsemi = c.mustp(c.pSemi, "semi").pa(rend.next);
-                return new Res<Ast.PackageBody>(new Ast.PackageBody(rn.v, rdecls.v, null, null), rsemi.next);
+                Res rend = c.mustpa(pEndName, rdecls.next, "expect end");
+                Res rsemi = c.mustpa(c.pSemi, rend.next, "semi");
+                return ranged(new Res<Ast.PackageBody>(new Ast.PackageBody(rn.v, rdecls.v, null, null), rsemi.next), s);
             } else {
                 Res<T2<List<Ast.Statement>, Ast.ExceptionBlock>> rb = paBody(rdecls.next);
-                Res rsemi = c.mustp(c.pSemi, "semi").pa(rb.next);
-                return new Res<Ast.PackageBody>(new Ast.PackageBody(rn.v, rdecls.v, rb.v.f1, rb.v.f2), rsemi.next);
+                Res rsemi = c.mustpa(c.pSemi, rb.next, "semi");
+                return ranged(new Res<Ast.PackageBody>(new Ast.PackageBody(rn.v, rdecls.v, rb.v.f1, rb.v.f2), rsemi.next), s);
             }
         }
 
@@ -2292,11 +2901,12 @@ public class Parser {
     };
 
     public T2<Ast.PackageSpec, Ast.PackageBody> paCRPackageSpecAndBody(Seq s) {
+        checkSkeleton(s);
         Res<Ast.PackageSpec> rs = pCRPackage.pa(s);
-        Res rslash = c.token(TokenType.Div).pa(rs.next);
+        Res rslash = pSlash.pa(rs.next);
         must(rslash, rs.next, "slash");
         Res<Ast.PackageBody> rb = pCRPackageBody.pa(rslash.next);
-        Res rslash2 = c.token(TokenType.Div).pa(rb.next);
+        Res rslash2 = pSlash.pa(rb.next);
         must(rslash2, rb.next, "slash");
         return new T2<Ast.PackageSpec, Ast.PackageBody>(rs.v, rb.v);
     }
@@ -2,9 +2,18 @@ package spinat.plsqlparser;
 
 public class ScanException extends RuntimeException {
 
+    // where the error ends, the end of the source for an unterminated string
+    // or comment, -1 if the error is just the char where scanning failed
+    public final int end;
+
     // this exception is throw if an error during parsing occurs
     // unknown character, uncloses string
     public ScanException(String s) {
+        this(s, -1);
+    }
+
+    public ScanException(String s, int end) {
         super(s);
+        this.end = end;
     }
 }
@@ -1,20 +1,32 @@
 package spinat.plsqlparser;
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class Scanner {
 
-    final String source;
+    final CharSequence source;
+    // the source if it is a String, the run scans use its intrinsic searches
+    final String str;
     final int len;
 
     // our state
     int start = 0;
     int istart = 0;
-    int line = 1;
-    int col = 0;
+    // the line starts, every scan method that passes a newline adds one
+    LineIndex lines = new LineIndex();
+    // the first newline not yet added to lines, see addLines
+    int nextNewline = -1;
 
-    public Scanner(String source) {
+    // the start of the last token scanned, its type is returned by scan1
+    int tstart = 0;
+
+    public Scanner(CharSequence source) {
         this.source = source;
+        this.str = source instanceof String ? (String) source : null;
         this.len = source.length();
     }
 
@@ -26,6 +38,42 @@ public class Scanner {
         }
     }
 
+    // the position of the first c at or after from, or -1. For a String
+    // source this is String.indexOf, which the JIT compiles to a vectorized
+    // search, so long runs are not walked one charAt at a time
+    int indexOf(char c, int from) {
+        if (str != null) {
+            return str.indexOf(c, from);
+        }
+        for (int x = from; x < len; x++) {
+            if (source.charAt(x) == c) {
+                return x;
+            }
+        }
+        return -1;
+    }
+
+    // the first newline at or after from, len if there is none
+    int newline(int from) {
+        int x = indexOf('\n', from);
+        return x < 0 ? len : x;
+    }
+
+    // record the line starts of the token from..to. nextNewline is the first
+    // newline that is not yet recorded, so every newline is searched once
+    // and tokens that can not contain newlines need not be looked at
+    void addLines(int from, int to) {
+        int nl = this.nextNewline;
+        if (nl < from) {
+            nl = newline(from);
+        }
+        while (nl < to) {
+            lines.add(nl + 1);
+            nl = newline(nl + 1);
+        }
+        this.nextNewline = nl;
+    }
+
     int scanString(int pos) {
         if (get(pos) != '\'') {
             throw new RuntimeException("BUG");
@@ -33,18 +81,15 @@ public class Scanner {
 
         int x = pos + 1;
         while (true) {
-            if (x >= len) {
-                throw new ScanException("Unexpected end of string");
+            x = indexOf('\'', x);
+            if (x < 0) {
+                throw new ScanException("Unexpected end of string", len);
             }
-            char c = get(x);
-            if (c == '\'') {
-                if ((x + 1) < len && get(x + 1) == '\'') {
-                    x = x + 2;
-                } else {
-                    return x + 1;
-                }
+            if ((x + 1) < len && get(x + 1) == '\'') {
+                x = x + 2;
             } else {
-                x++;
+                addLines(pos, x + 1);
+                return x + 1;
             }
         }
     }
@@ -53,33 +98,30 @@ public class Scanner {
         if (get(pos) != '"') {
             throw new RuntimeException("BUG");
         }
-        int x = pos + 1;
-        while (true) {
-            if (x >= len) {
-                throw new ScanException("unexpected end of quoted identifier");
-            }
-            if (get(x) == '"') {
-                return x + 1;
-            } else {
-                x++;
-            }
+        int x = indexOf('"', pos + 1);
+        if (x < 0) {
+            throw new ScanException("unexpected end of quoted identifier", len);
         }
+        addLines(pos, x + 1);
+        return x + 1;
     }
 
     int scanMLComment(int pos) {
         if (!(get(pos) == '/' && get(pos + 1) == '*')) {
             throw new RuntimeException("BUG");
         }
-        int x = pos + 2;
+        // search for the slash, banners are full of stars
+        int x = pos + 3;
         while (true) {
-            if (!(x < len - 1)) {
-                throw new ScanException("unexpected end of comment");
+            x = indexOf('/', x);
+            if (x < 0) {
+                throw new ScanException("unexpected end of comment", len);
             }
-            if (get(x) == '*' && get(x + 1) == '/') {
-                return x + 2;
-            } else {
-                x++;
+            if (get(x - 1) == '*') {
+                addLines(pos, x + 1);
+                return x + 1;
             }
+            x++;
         }
     }
 
@@ -87,27 +129,31 @@ public class Scanner {
         if (!((pos < len - 1) && get(pos) == '-' && get(pos + 1) == '-')) {
             throw new RuntimeException("BUG");
         }
-        int x = pos + 2;
-        while (true) {
-            if (x < len) {
-                if (get(x) == '\n') {
-                    return x + 1;
-                } else {
-                    x++;
-                }
-            } else {
-                return x;
-            }
+        int x = newline(pos + 2);
+        if (x < len) {
+            addLines(pos, x + 1);
+            return x + 1;
+        } else {
+            return x;
         }
     }
 
     boolean isIdentMember(char c) {
-        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
-                || c == '#' || c == '$' || c == '_';
+        return c < 128 && IDENT_MEMBER[c];
     }
 
     int scanIdent(int pos) {
         int x = pos;
+        if (str != null) {
+            while (x < len) {
+                char c = str.charAt(x);
+                if (c >= 128 || !IDENT_MEMBER[c]) {
+                    break;
+                }
+                x++;
+            }
+            return x;
+        }
         while (x < len && isIdentMember(get(x))) {
             x++;
         }
@@ -124,26 +170,15 @@ public class Scanner {
 
     int ScabWS(int pos) {
         int x = pos;
-        while (x < len && Character.isWhitespace(get(x))) {
-            x++;
-        }
-        return x;
-    }
-
-    void advPos(int[] lc, int from, int to) {
-        int x = from;
-        while (true) {
-            if (x >= to) {
-                return;
-            }
-            if (get(x) == '\n') {
-                lc[0]++;
-                lc[1] = 0;
-            } else {
-                lc[1]++;
+        while (x < len) {
+            char c = get(x);
+            if (c < 128 ? CHAR_CLASS[c] != K_WS : !Character.isWhitespace(c)) {
+                break;
             }
             x++;
         }
+        addLines(pos, x);
+        return x;
     }
 
     int qString(int pos) {
@@ -171,12 +206,15 @@ public class Scanner {
         }
         int x = pos + 3;
         while (true) {
-            if (x + 1 < len) {
-                if ((get(x) == ende && get(x + 1) == '\'')) {
-                    return x + 2;
-                } else {
-                    x++;
-                }
+            if (x + 1 >= len) {
+                throw new ScanException("unexpected end of q string", len);
+            }
+            char c = get(x);
+            if ((c == ende && get(x + 1) == '\'')) {
+                addLines(pos, x + 2);
+                return x + 2;
+            } else {
+                x++;
             }
         }
     }
@@ -198,8 +236,9 @@ public class Scanner {
         } else {
             x = pos + 1;
         }
-        if (!isArabicDigit(get(x))) {
-            throw new ScanException("can not parse number");
+        // the error is the number up to here, it is not scanned again
+        if (x >= len || !isArabicDigit(get(x))) {
+            throw new ScanException("can not parse number", x);
         }
         while (x < len && isArabicDigit(get(x))) {
             x++;
@@ -219,7 +258,7 @@ public class Scanner {
         }
     }
 
-    Token scanNumber(int pos) {
+    TokenType scanNumber(int pos) {
         int x = ScanInt(pos);
         // the problem : for i in 1..10 loop 
         // we only have to check for the second "." *)
@@ -246,22 +285,30 @@ public class Scanner {
         }
     }
 
-    Token tokx(TokenType tt, int next) {
-        Token res = new Token(tt, this.source.substring(start, next), this.start, this.istart, this.line, this.col);
+    // like scan1, an error is returned as Error token
+    TokenType scanResilient(int istart) {
+        try {
+            return scan1(istart);
+        } catch (RuntimeException e) {
+            int end = e instanceof ScanException && ((ScanException) e).end >= 0
+                    ? ((ScanException) e).end
+                    : this.start + 1;
+            addLines(this.start, end);
+            return tokx(TokenType.Error, end);
+        }
+    }
 
-        int[] f = new int[]{this.line, this.col};
-        advPos(f, this.start, next);
-        this.line = f[0];
-        this.col = f[1];
+    TokenType tokx(TokenType tt, int next) {
+        this.tstart = this.start;
         this.start = next;
-        return res;
+        return tt;
     }
 
-    Token tok2(TokenType what) {
+    TokenType tok2(TokenType what) {
         return tokx(what, this.start + 2);
     }
 
-    Token tok1(TokenType what) {
+    TokenType tok1(TokenType what) {
         return tokx(what, this.start + 1);
     }
 
@@ -275,7 +322,7 @@ public class Scanner {
      end
  
      */
-    Token check1() {
+    TokenType check1() {
         char c = get(start);
         switch (c) {
             case '\'':
@@ -324,59 +371,183 @@ public class Scanner {
                 } else if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
                     return tokx(TokenType.Ident, scanIdent(this.start));
                 } else {
-                    throw new ScanException("unhandled char: " + c + " at line" + this.line);
+                    throw new ScanException("unhandled char: " + c + " at line" + lines.line(this.start));
                 }
         }
     }
 
-    Token scan1(int istart) {
+    // the character classes of the ASCII chars for scan1, each class is a
+    // state: K_SINGLE is a complete token, the operator classes decide on the
+    // second char, the others start a longer token
+    static final byte K_ERROR = 0;
+    static final byte K_WS = 1;
+    static final byte K_LETTER = 2;
+    static final byte K_DIGIT = 3;
+    static final byte K_SINGLE = 4;
+    static final byte K_QUOTE = 5;
+    static final byte K_DQUOTE = 6;
+    static final byte K_EQUAL = 7;
+    static final byte K_LESS = 8;
+    static final byte K_GREATER = 9;
+    static final byte K_COLON = 10;
+    static final byte K_EXCLAMATION = 11;
+    static final byte K_BAR = 12;
+    static final byte K_MINUS = 13;
+    static final byte K_SLASH = 14;
+    static final byte K_STAR = 15;
+    static final byte K_DOT = 16;
+    static final byte K_DOLLAR = 17;
+
+    static final byte[] CHAR_CLASS = new byte[128];
+    // the token of the K_SINGLE chars
+    static final TokenType[] SINGLE = new TokenType[128];
+    // the ASCII chars that may follow the first char of an identifier
+    static final boolean[] IDENT_MEMBER = new boolean[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c)) {
+                CHAR_CLASS[c] = K_WS;
+            } else if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+                CHAR_CLASS[c] = K_LETTER;
+            } else if (isArabicDigit(c)) {
+                CHAR_CLASS[c] = K_DIGIT;
+            }
+            IDENT_MEMBER[c] = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || c == '#' || c == '$' || c == '_';
+        }
+        single('(', TokenType.LParen);
+        single(')', TokenType.RParen);
+        single('[', TokenType.LBracket);
+        single(']', TokenType.RBracket);
+        single('+', TokenType.Plus);
+        single(',', TokenType.Comma);
+        single(';', TokenType.Semi);
+        single('%', TokenType.Percent);
+        CHAR_CLASS['\''] = K_QUOTE;
+        CHAR_CLASS['"'] = K_DQUOTE;
+        CHAR_CLASS['='] = K_EQUAL;
+        CHAR_CLASS['<'] = K_LESS;
+        CHAR_CLASS['>'] = K_GREATER;
+        CHAR_CLASS[':'] = K_COLON;
+        CHAR_CLASS['!'] = K_EXCLAMATION;
+        CHAR_CLASS['|'] = K_BAR;
+        CHAR_CLASS['-'] = K_MINUS;
+        CHAR_CLASS['/'] = K_SLASH;
+        CHAR_CLASS['*'] = K_STAR;
+        CHAR_CLASS['.'] = K_DOT;
+        CHAR_CLASS['$'] = K_DOLLAR;
+    }
+
+    private static void single(char c, TokenType tt) {
+        CHAR_CLASS[c] = K_SINGLE;
+        SINGLE[c] = tt;
+    }
+
+    // two char tokens are only recognized if they do not end at the last char,
+    // this is how the scanner always worked
+    TokenType scan1(int istart) {
         this.istart = istart;
-        if (this.start < len - 2) {
-            String a = source.substring(this.start, this.start + 2);
-            if (a.equals("=>")) {
-                return tok2(TokenType.Arrow);
-            } else if (a.equals("<=")) {
-                return tok2(TokenType.LEqual);
-            } else if (a.equals(">=")) {
-                return tok2(TokenType.GEqual);
-            } else if (a.equals(":=")) {
-                return tok2(TokenType.Assign);
-            } else if (a.equals("<>")) {
-                return tok2(TokenType.NEqual);
-            } else if (a.equals("!=")) {
-                return tok2(TokenType.NEqual);
-            } else if (a.equals("||")) {
-                return tok2(TokenType.StringAdd);
-            } else if (a.equals("--")) {
-                return tokx(TokenType.EOLineComment, scanEoLComment(this.start));
-            } else if (a.equals("/*")) {
-                return tokx(TokenType.MultiLineComment, scanMLComment(this.start));
-            } else if (a.equals("**")) {
-                return tok2(TokenType.Power);
-            } else if (a.equals("..")) {
-                return tok2(TokenType.DotDot);
-            } else if (a.equals("<<")) {
-                return tok2(TokenType.LabelStart);
-            } else if (a.equals(">>")) {
-                return tok2(TokenType.LabelEnd);
-            } else if (a.equals("q'")) {
-                return tokx(TokenType.QString, qString(this.start));
-            } else if (a.equals("$$")) {
-                return tokx(TokenType.DollarDollarIdent, scanDollarDollarIdent(this.start));
-            } else {
-                if (get(start) == '.' && isArabicDigit(get(start + 1))) {
+        char a = source.charAt(this.start);
+        if (a >= 128) {
+            return check1();
+        }
+        // the second char, 0 if a two char token is not possible here
+        char b = this.start < len - 2 ? source.charAt(this.start + 1) : 0;
+        switch (CHAR_CLASS[a]) {
+            case K_WS:
+                return tokx(TokenType.WhiteSpace, ScabWS(this.start));
+            case K_LETTER:
+                if (a == 'q' && b == '\'') {
+                    return tokx(TokenType.QString, qString(this.start));
+                }
+                return tokx(TokenType.Ident, scanIdent(this.start));
+            case K_DIGIT:
+                return scanNumber(this.start);
+            case K_SINGLE:
+                return tok1(SINGLE[a]);
+            case K_QUOTE:
+                return tokx(TokenType.String, scanString(this.start));
+            case K_DQUOTE:
+                return tokx(TokenType.QIdent, scanQIdent(this.start));
+            case K_EQUAL:
+                return b == '>' ? tok2(TokenType.Arrow) : tok1(TokenType.Equal);
+            case K_LESS:
+                switch (b) {
+                    case '=':
+                        return tok2(TokenType.LEqual);
+                    case '>':
+                        return tok2(TokenType.NEqual);
+                    case '<':
+                        return tok2(TokenType.LabelStart);
+                    default:
+                        return tok1(TokenType.Less);
+                }
+            case K_GREATER:
+                switch (b) {
+                    case '=':
+                        return tok2(TokenType.GEqual);
+                    case '>':
+                        return tok2(TokenType.LabelEnd);
+                    default:
+                        return tok1(TokenType.Greater);
+                }
+            case K_COLON:
+                return b == '=' ? tok2(TokenType.Assign) : tok1(TokenType.Colon);
+            case K_EXCLAMATION:
+                return b == '=' ? tok2(TokenType.NEqual) : tok1(TokenType.Exclamation);
+            case K_BAR:
+                if (b == '|') {
+                    return tok2(TokenType.StringAdd);
+                }
+                return check1();
+            case K_MINUS:
+                if (b == '-') {
+                    return tokx(TokenType.EOLineComment, scanEoLComment(this.start));
+                }
+                return tok1(TokenType.Minus);
+            case K_SLASH:
+                if (b == '*') {
+                    return tokx(TokenType.MultiLineComment, scanMLComment(this.start));
+                }
+                return tok1(TokenType.Div);
+            case K_STAR:
+                return b == '*' ? tok2(TokenType.Power) : tok1(TokenType.Mul);
+            case K_DOT:
+                if (b == '.') {
+                    return tok2(TokenType.DotDot);
+                } else if (b != 0 && isArabicDigit(b)) {
                     return tokx(TokenType.Float, scanFloat(this.start));
-                } else {
-                    return check1();
                 }
-            }
+                return tok1(TokenType.Dot);
+            case K_DOLLAR:
+                if (b == '$') {
+                    return tokx(TokenType.DollarDollarIdent, scanDollarDollarIdent(this.start));
+                }
+                return check1();
+            default:
+                return check1();
+        }
+    }
+
+    // the symbol of an Ident or QIdent token from start to end of s, the
+    // keyword id of an Ident is that of its symbol. Null for other tokens
+    static Symbol symbol(TokenType tt, CharSequence s, int start, int end) {
+        if (tt == TokenType.Ident) {
+            return Symbols.SHARED.lookup(s, start, end, true);
+        } else if (tt == TokenType.QIdent) {
+            return Symbols.SHARED.lookup(s, start + 1, end - 1, false);
         } else {
-            return check1();
+            return null;
         }
     }
 
     public static boolean isRelevant(Token t) {
-        switch (t.ttype) {
+        return isRelevant(t.ttype);
+    }
+
+    public static boolean isRelevant(TokenType tt) {
+        switch (tt) {
             case EOLineComment:
                 return false;
             case MultiLineComment:
@@ -388,22 +559,210 @@ public class Scanner {
         }
     }
 
-    public static ArrayList<Token> scanAll(String s) {
-        ArrayList<Token> res = new ArrayList<Token>();
+    public static ArrayList<Token> scanAll(CharSequence s) {
+        return scanBuffer(s).toList();
+    }
+
+    // scan the source after an edit of old.source: the removed chars at offset
+    // were replaced by inserted. Scanning starts at the last token boundary
+    // before the edit that is safe and stops as soon as a token starts where an
+    // old token started, the old tokens and line starts from there on are
+    // copied with their positions shifted. The result has whitespace and
+    // comments only if old has them.
+    public static TokenBuffer rescan(TokenBuffer old, int offset, int removed, CharSequence inserted) {
+        CharSequence src = old.source;
+        int oldLen = src.length();
+        if (offset < 0 || removed < 0 || offset + removed > oldLen) {
+            throw new IllegalArgumentException("edit outside of the source: " + offset + "/" + removed);
+        }
+        StringBuilder b = new StringBuilder(oldLen - removed + inserted.length());
+        b.append(src, 0, offset).append(inserted).append(src, offset + removed, oldLen);
+        String s = b.toString();
         int len = s.length();
+        int delta = len - oldLen;
+
+        // the tokens before r stay: they and their look ahead of at most two
+        // chars end before the edit, and they are not in the last two chars
+        // where scan1 only looks at single chars
+        int limit = Math.min(offset, Math.min(oldLen, len) - 2);
+        int r = Math.max(0, old.indexAt(limit - 2));
+        TokenBuffer res = new TokenBuffer(s, old.size() + inserted.length() / 4 + 16);
+        res.trivia = old.trivia;
+        res.appendShifted(old, 0, r, 0, -1, -1);
+
         Scanner sc = new Scanner(s);
-        int istart = 0;
+        sc.start = old.pos(r);
+        sc.lines.addUpTo(old.lines(), sc.start);
+        res.lines = sc.lines;
+        int istart = old.ipos(r);
+        // new tokens starting here or later may line up with old ones
+        int resync = offset + inserted.length();
+        while (true) {
+            if (sc.start >= resync) {
+                int j = old.indexAt(sc.start - delta);
+                if (old.pos(j) == sc.start - delta) {
+                    res.appendShifted(old, j, old.size(), delta, old.ipos(j), istart);
+                    sc.lines.addAfter(old.lines(), old.pos(j), delta);
+                    return res;
+                }
+            }
+            if (sc.start < len) {
+                TokenType tt = sc.scan1(istart);
+                if (isRelevant(tt)) {
+                    Symbol y = symbol(tt, s, sc.tstart, sc.start);
+                    res.add(tt, sc.tstart, sc.start, istart, tt == TokenType.Ident ? y.keyword : Keywords.NONE, y);
+                    istart = sc.start;
+                } else if (res.trivia) {
+                    res.add(tt, sc.tstart, sc.start, istart, Keywords.NONE, null);
+                }
+            } else {
+                res.add(TokenType.TheEnd, sc.start, sc.start, istart, Keywords.NONE, null);
+                return res;
+            }
+        }
+    }
+
+    // scan the whole source into a compact token buffer,
+    // the buffer contains the whitespace and comments too.
+    // The source is not copied, the tokens refer to it
+    public static TokenBuffer scanBuffer(CharSequence s) {
+        // a guess, about one token every four characters
+        return scanInto(s, new TokenBuffer(s, s.length() / 4 + 16), true, null);
+    }
+
+    // scan the source into a token buffer with only the tokens the parser
+    // needs, whitespace and comments are skipped while scanning. The ipos of
+    // the tokens still covers the skipped text before them
+    public static TokenBuffer scanRelevant(CharSequence s) {
+        // about every second token is trivia
+        return scanInto(s, new TokenBuffer(s, s.length() / 8 + 16), false, null);
+    }
+
+    // like scanRelevant, the comments are recorded in comments
+    public static TokenBuffer scanRelevant(CharSequence s, Comments comments) {
+        return scanInto(s, new TokenBuffer(s, s.length() / 8 + 16), false, comments);
+    }
+
+    // like scanBuffer, large scripts are split at the slashes between their
+    // units and the parts are scanned on the executor
+    public static TokenBuffer scanBuffer(CharSequence s, ExecutorService executor) {
+        return scanParallel(s, true, executor, MIN_CHUNK);
+    }
+
+    // like scanRelevant, large scripts are split at the slashes between their
+    // units and the parts are scanned on the executor
+    public static TokenBuffer scanRelevant(CharSequence s, ExecutorService executor) {
+        return scanParallel(s, false, executor, MIN_CHUNK);
+    }
+
+    // smaller parts are not worth a task
+    static final int MIN_CHUNK = 64 * 1024;
+
+    static TokenBuffer scanParallel(final CharSequence s, final boolean trivia, ExecutorService executor, int minChunk) {
+        final int[] splits = SlashSplitter.chunks(s, minChunk);
+        int n = splits.length + 1;
+        ArrayList<Future<TokenBuffer>> futures = new ArrayList<Future<TokenBuffer>>(n);
+        for (int i = 0; i < n; i++) {
+            final int from = i == 0 ? 0 : splits[i - 1];
+            final int to = i == n - 1 ? s.length() : splits[i];
+            futures.add(executor.submit(new Callable<TokenBuffer>() {
+
+                @Override
+                public TokenBuffer call() {
+                    int guess = (to - from) / (trivia ? 4 : 8) + 16;
+                    return scanInto(s, from, to, new TokenBuffer(s, guess), trivia, null, false);
+                }
+            }));
+        }
+        TokenBuffer res = new TokenBuffer(s, s.length() / (trivia ? 4 : 8) + 16);
+        res.trivia = trivia;
+        res.lines = new LineIndex();
+        // the ipos of the end token of the previous part, the first token of
+        // a part gets it instead of the start of the part
+        int ipos = 0;
+        int end = 0;
+        for (int i = 0; i < n; i++) {
+            int from = i == 0 ? 0 : splits[i - 1];
+            TokenBuffer b;
+            try {
+                b = end == from ? futures.get(i).get() : null;
+            } catch (ExecutionException e) {
+                b = null;
+            } catch (InterruptedException e) {
+                for (Future<TokenBuffer> f : futures) {
+                    f.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            if (b == null) {
+                // the previous part did not end at the split point or this
+                // part failed, the sequential scan gives the right tokens
+                // or the right error
+                for (Future<TokenBuffer> f : futures) {
+                    f.cancel(true);
+                }
+                return trivia ? scanBuffer(s) : scanRelevant(s);
+            }
+            int last = b.size() - 1;
+            res.appendShifted(b, 0, i == n - 1 ? last + 1 : last, 0, from, i == 0 ? from : ipos);
+            res.lines.addAfter(b.lines, from, 0);
+            ipos = b.ipos(last);
+            end = b.pos(last);
+        }
+        return res;
+    }
+
+    static TokenBuffer scanInto(CharSequence s, TokenBuffer res, boolean trivia, Comments comments) {
+        return scanInto(s, 0, s.length(), res, trivia, comments, false);
+    }
+
+    // scan the source, text that can not be scanned becomes an Error token and
+    // scanning goes on after it. An unterminated string, quoted identifier or
+    // comment is an error up to the end of the source, any other error is the
+    // char where scanning failed. Each char is scanned at most twice, so this
+    // takes linear time on any input
+    public static TokenBuffer scanResilient(CharSequence s, boolean trivia) {
+        return scanInto(s, 0, s.length(), new TokenBuffer(s, s.length() / (trivia ? 4 : 8) + 16), trivia, null,
+                true);
+    }
+
+    // scan the tokens starting at from until to is reached, the end token is
+    // at the position where scanning stopped. This is after to if the last
+    // token does not end at to
+    static TokenBuffer scanInto(CharSequence s, int from, int to, TokenBuffer res, boolean trivia, Comments comments,
+            boolean resilient) {
+        int len = to;
+        Scanner sc = new Scanner(s);
+        sc.start = from;
+        res.lines = sc.lines;
+        res.trivia = trivia;
+        int istart = from;
+        // the number of lines at the end of the last relevant token, for trailing comments
+        int ilines = -1;
+        if (comments != null) {
+            comments.init(res);
+        }
         while (true) {
             if (sc.start < len) {
-                Token t = sc.scan1(istart);
-                if (isRelevant(t)) {
-                    res.add(t);
+                TokenType tt = resilient ? sc.scanResilient(istart) : sc.scan1(istart);
+                if (isRelevant(tt)) {
+                    Symbol y = symbol(tt, s, sc.tstart, sc.start);
+                    res.add(tt, sc.tstart, sc.start, istart, tt == TokenType.Ident ? y.keyword : Keywords.NONE, y);
                     istart = sc.start;
+                    ilines = sc.lines.size();
                 } else {
-                    res.add(t);
+                    if (trivia) {
+                        res.add(tt, sc.tstart, sc.start, istart, Keywords.NONE, null);
+                    }
+                    if (comments != null && tt != TokenType.WhiteSpace) {
+                        // the comment itself may end with a newline
+                        boolean sameLine = ilines == sc.lines.line(sc.tstart);
+                        comments.add(sc.tstart, sc.start, res.size(), sameLine);
+                    }
                 }
             } else {
-                res.add(new Token(TokenType.TheEnd, "", sc.start, istart, sc.line, sc.col));
+                res.add(TokenType.TheEnd, sc.start, sc.start, istart, Keywords.NONE, null);
                 return res;
             }
         }
@@ -0,0 +1,161 @@
+package spinat.plsqlparser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// parses a script of any length one unit at a time: package specs, package
+// bodies and anonymous blocks, separated by a slash alone on a line.
+// Only the text up to the next slash is read and scanned, its tokens are
+// dropped once its units are parsed, so memory does not grow with the script.
+// Errors are RuntimeExceptions from hasNext or next, a ParseException is for
+// the text up to one slash, the following units can still be read.
+public class ScriptParser implements Iterator<ScriptParser.Unit> {
+
+    // one unit of the script, exactly one of spec, body and block is set
+    public static class Unit {
+
+        public final Ast.PackageSpec spec;
+        public final Ast.PackageBody body;
+        public final Ast.Block block;
+        // the char offset and line in the script where the unit starts
+        public final int offset;
+        public final int line;
+
+        Unit(Ast.PackageSpec spec, Ast.PackageBody body, Ast.Block block, int offset, int line) {
+            this.spec = spec;
+            this.body = body;
+            this.block = block;
+            this.offset = offset;
+            this.line = line;
+        }
+    }
+
+    private static final int CHUNK = 64 * 1024;
+
+    private final Reader reader;
+    private final Parser parser;
+    private final int chunk;
+    // the text after the last slash, it starts at offset and line of the script
+    private final StringBuilder pending = new StringBuilder();
+    private int offset = 0;
+    private int line = 1;
+    private boolean eof = false;
+    private final ArrayDeque<Unit> units = new ArrayDeque<Unit>();
+
+    public ScriptParser(Reader reader) {
+        this(reader, new Parser(), CHUNK);
+    }
+
+    public ScriptParser(Reader reader, Parser parser) {
+        this(reader, parser, CHUNK);
+    }
+
+    ScriptParser(Reader reader, Parser parser, int chunk) {
+        this.reader = reader;
+        this.parser = parser;
+        this.chunk = chunk;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (this.units.isEmpty()) {
+                if (!parseNext()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Unit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.units.removeFirst();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    // read more text, the chunk grows with the text so that a long unit is
+    // not searched for its slash again and again
+    private void read() throws IOException {
+        char[] buf = new char[Math.max(this.chunk, this.pending.length())];
+        int n = this.reader.read(buf);
+        if (n < 0) {
+            this.eof = true;
+        } else {
+            this.pending.append(buf, 0, n);
+        }
+    }
+
+    // parse the units up to the next slash, false at the end of the script
+    private boolean parseNext() throws IOException {
+        while (true) {
+            int slash = SlashSplitter.first(this.pending, this.eof);
+            if (slash >= 0 || this.eof) {
+                int end = slash >= 0 ? slash : this.pending.length();
+                if (end == 0 && this.eof) {
+                    return false;
+                }
+                String text = this.pending.substring(0, end);
+                int textOffset = this.offset;
+                int textLine = this.line;
+                int next = slash >= 0 ? slash + 1 : end;
+                for (int i = 0; i < next; i++) {
+                    if (this.pending.charAt(i) == '\n') {
+                        this.line++;
+                    }
+                }
+                this.pending.delete(0, next);
+                this.offset += next;
+                parseUnits(text, textOffset, textLine);
+                return true;
+            }
+            read();
+        }
+    }
+
+    private void parseUnits(String text, int textOffset, int textLine) {
+        TokenBuffer b = Scanner.scanRelevant(text);
+        // the lines of the tokens are those of the script
+        LineIndex lines = new LineIndex(0, textLine);
+        lines.addAfter(b.lines, 0, 0);
+        b.lines = lines;
+        Seq s = new Seq(b);
+        while (s.head().ttype != TokenType.TheEnd) {
+            int unitOffset = textOffset + s.head().pos;
+            int unitLine = s.head().line();
+            Res<Ast.PackageBody> rb = parser.pCRPackageBody.pa(s);
+            if (rb != null) {
+                this.units.add(new Unit(null, rb.v, null, unitOffset, unitLine));
+                s = rb.next;
+                continue;
+            }
+            Res<Ast.PackageSpec> rs = parser.pCRPackage.pa(s);
+            if (rs != null) {
+                this.units.add(new Unit(rs.v, null, null, unitOffset, unitLine));
+                s = rs.next;
+                continue;
+            }
+            if (parser.pkw_declare.pa(s) == null && parser.pkw_begin.pa(s) == null) {
+                throw new ParseException("expecting create package, create package body or a block", s);
+            }
+            Res<Ast.Statement> r = parser.paBlock_committed(s);
+            this.units.add(new Unit(null, null, ((Ast.BlockStatement) r.v).block, unitOffset, unitLine));
+            s = r.next;
+            if (s.head().ttype == TokenType.Semi) {
+                s = s.tail();
+            }
+        }
+    }
+}
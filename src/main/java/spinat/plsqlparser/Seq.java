@@ -1,53 +1,101 @@
 package spinat.plsqlparser;
 
-import java.util.ArrayList;
 import java.util.List;
 
+// a position in the token stream: the shared token array and an index into it.
+// There is only one Seq object per index, tail() does not allocate.
 public final class Seq {
 
-    private final ArrayList<Token> l;
+    private final Tokens tokens;
     private final int start;
-    private final int end;
 
     public Seq(List<Token> l) {
-        this.l = new ArrayList<Token>();
-        this.l.addAll(l);
-        start = 0;
-        end = this.l.size();
+        this.tokens = new Tokens(l, this);
+        this.start = 0;
+    }
+
+    // the parser does not expect whitespace or comments, use TokenBuffer.relevant
+    public Seq(TokenBuffer buffer) {
+        this.tokens = new Tokens(buffer, this);
+        this.start = 0;
+    }
+
+    Seq(Tokens tokens, int start) {
+        this.tokens = tokens;
+        this.start = start;
+    }
+
+    // a Seq that scans the source while the parser reads it, only the tokens
+    // after the last commit and at most maxBacktrack tokens before the furthest
+    // token read are kept, all of them if maxBacktrack is negative.
+    // Skeleton mode does not work on such a Seq, the skipped bodies are dropped
+    public static Seq windowed(CharSequence source, int maxBacktrack) {
+        return new WindowTokens(source, maxBacktrack).seq(0);
     }
 
     public Token head() {
-        if (this.start < this.end) {
-            return this.l.get(start);
+        if (this.tokens.has(this.start)) {
+            return this.tokens.get(this.start);
         } else {
             throw new RuntimeException("past end of seq");
         }
     }
 
-    Seq(Seq s, int start, int end) {
-        this.l = s.l;
-        this.start = start;
-        this.end = end;
-    }
-
     public Seq tail() {
-        if (this.start < this.end) {
-            return new Seq(this, this.start + 1, end);
+        if (this.tokens.has(this.start)) {
+            return this.tokens.seq(this.start + 1);
         } else {
             throw new RuntimeException("passt end of seq");
         }
     }
 
+    Tokens tokens() {
+        return this.tokens;
+    }
+
+    // a parser expecting one of the tokens in expected failed here
+    void fail(First expected) {
+        this.tokens.fail(this.start, expected);
+    }
+
+    // the index of the head in the token array
+    public int index() {
+        return this.start;
+    }
+
+    // the Seq at index i of the same token array
+    public Seq at(int i) {
+        if (i < 0 || (i > 0 && !this.tokens.has(i - 1))) {
+            throw new IndexOutOfBoundsException("no token at " + i);
+        }
+        return this.tokens.seq(i);
+    }
+
+    // the parser will not backtrack before this position, the tokens before
+    // it may be dropped. Only a windowed Seq drops tokens
+    public void commit() {
+        this.tokens.commit(this.start);
+    }
+
+    // the head token as string and the tail, shared between all callers
+    Res<String> headString() {
+        if (this.tokens.has(this.start)) {
+            return this.tokens.headString(this.start);
+        } else {
+            throw new RuntimeException("past end of seq");
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
-        b.append(String.format("Seq %d/%d:", this.head().line, this.head().col));
+        b.append(String.format("Seq %d/%d:", this.head().line(), this.head().col()));
         for (int i = 0; i < 10; i++) {
-            if (i + this.start >= this.end) {
+            if (!this.tokens.has(i + this.start)) {
                 return b.toString();
             }
             b.append(" ");
-            b.append(this.l.get(i + this.start).str);
+            b.append(this.tokens.get(i + this.start).str());
         }
         return b.toString();
     }
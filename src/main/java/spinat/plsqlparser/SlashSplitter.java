@@ -0,0 +1,213 @@
+package spinat.plsqlparser;
+
+// finds the slashes that end the units of a SQL*Plus script: a slash alone on
+// a line, outside of strings, quoted identifiers, q strings and comments.
+// The scanner is between two tokens at such a slash, so the text before and
+// the text from the slash on can be scanned independently.
+// This is a single pass over the chars that only knows where strings and
+// comments start and end, it does not create tokens.
+final class SlashSplitter {
+
+    private final CharSequence s;
+    // the source if it is a String, for its indexOf
+    private final String str;
+    private final int len;
+    // false if more text may follow, then a slash on the last line does not count
+    private final boolean complete;
+    private final int max;
+    private int[] res = new int[16];
+    private int size = 0;
+
+    private SlashSplitter(CharSequence s, boolean complete, int max) {
+        this.s = s;
+        this.str = s instanceof String ? (String) s : null;
+        this.len = s.length();
+        this.complete = complete;
+        this.max = max;
+    }
+
+    // the positions of the unit ending slashes in s
+    static int[] split(CharSequence s) {
+        return new SlashSplitter(s, true, Integer.MAX_VALUE).run();
+    }
+
+    // the position of the first unit ending slash in s, or -1.
+    // If s is not complete the line of the slash must end in s
+    static int first(CharSequence s, boolean complete) {
+        int[] r = new SlashSplitter(s, complete, 1).run();
+        return r.length == 0 ? -1 : r[0];
+    }
+
+    // split points from the slashes so that every chunk is at least
+    // minChunk chars long, except the last one
+    static int[] chunks(CharSequence s, int minChunk) {
+        int[] slashes = split(s);
+        int[] a = new int[slashes.length];
+        int n = 0;
+        int last = 0;
+        for (int p : slashes) {
+            if (p - last >= minChunk && s.length() - p >= minChunk) {
+                a[n++] = p;
+                last = p;
+            }
+        }
+        int[] r = new int[n];
+        System.arraycopy(a, 0, r, 0, n);
+        return r;
+    }
+
+    private void add(int pos) {
+        if (this.size == this.res.length) {
+            int[] a = new int[this.size * 2];
+            System.arraycopy(this.res, 0, a, 0, this.size);
+            this.res = a;
+        }
+        this.res[this.size++] = pos;
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    // if the line starting at pos is a single slash the position of the slash, else -1
+    private int loneSlash(int pos) {
+        int x = pos;
+        while (x < len && isBlank(s.charAt(x))) {
+            x++;
+        }
+        if (x >= len || s.charAt(x) != '/') {
+            return -1;
+        }
+        int slash = x;
+        x++;
+        while (x < len && isBlank(s.charAt(x))) {
+            x++;
+        }
+        if (x >= len) {
+            return complete ? slash : -1;
+        }
+        return s.charAt(x) == '\n' ? slash : -1;
+    }
+
+    // the position after the first c at or after pos, len if there is none
+    private int after(char c, int pos) {
+        int x;
+        if (str != null) {
+            x = str.indexOf(c, pos);
+        } else {
+            x = pos;
+            while (x < len && s.charAt(x) != c) {
+                x++;
+            }
+        }
+        return x < 0 || x >= len ? len : x + 1;
+    }
+
+    // the chars that may change the state, all others are skipped
+    private static final byte C_NEWLINE = 1;
+    private static final byte C_QUOTE = 2;
+    private static final byte C_DQUOTE = 3;
+    private static final byte C_MINUS = 4;
+    private static final byte C_SLASH = 5;
+    private static final byte C_Q = 6;
+    private static final byte[] CLASS = new byte[128];
+
+    static {
+        CLASS['\n'] = C_NEWLINE;
+        CLASS['\''] = C_QUOTE;
+        CLASS['"'] = C_DQUOTE;
+        CLASS['-'] = C_MINUS;
+        CLASS['/'] = C_SLASH;
+        CLASS['q'] = C_Q;
+    }
+
+    private void lineStart(int pos) {
+        int slash = loneSlash(pos);
+        if (slash > 0) {
+            add(slash);
+        }
+    }
+
+    private int[] run() {
+        lineStart(0);
+        int x = 0;
+        while (x < len && this.size < this.max) {
+            char c = s.charAt(x);
+            if (c >= 128 || CLASS[c] == 0) {
+                x++;
+                continue;
+            }
+            char b = x + 1 < len ? s.charAt(x + 1) : 0;
+            switch (CLASS[c]) {
+                case C_NEWLINE:
+                    x++;
+                    lineStart(x);
+                    break;
+                case C_QUOTE:
+                    // a doubled quote is just two strings for this purpose
+                    x = after('\'', x + 1);
+                    break;
+                case C_DQUOTE:
+                    x = after('"', x + 1);
+                    break;
+                case C_MINUS:
+                    if (b == '-') {
+                        // the newline ends the comment and starts the next line
+                        x = after('\n', x + 2);
+                        lineStart(x);
+                    } else {
+                        x++;
+                    }
+                    break;
+                case C_SLASH:
+                    if (b == '*') {
+                        x = x + 3;
+                        do {
+                            x = after('/', x);
+                        } while (x < len && s.charAt(x - 2) != '*');
+                    } else {
+                        x++;
+                    }
+                    break;
+                default:
+                    // a q at the end of an identifier does not start a q string
+                    if (b == '\'' && x < len - 2
+                            && !(x > 0 && s.charAt(x - 1) < 128 && Scanner.IDENT_MEMBER[s.charAt(x - 1)])) {
+                        x = qString(x);
+                    } else {
+                        x++;
+                    }
+            }
+        }
+        int[] r = new int[this.size];
+        System.arraycopy(this.res, 0, r, 0, this.size);
+        return r;
+    }
+
+    // the end of the q string at pos, like Scanner.qString
+    private int qString(int pos) {
+        char ende;
+        switch (s.charAt(pos + 2)) {
+            case '[':
+                ende = ']';
+                break;
+            case '(':
+                ende = ')';
+                break;
+            case '{':
+                ende = '}';
+                break;
+            case '<':
+                ende = '>';
+                break;
+            default:
+                ende = s.charAt(pos + 2);
+        }
+        for (int x = pos + 3; x + 1 < len; x++) {
+            if (s.charAt(x) == ende && s.charAt(x + 1) == '\'') {
+                return x + 2;
+            }
+        }
+        return len;
+    }
+}
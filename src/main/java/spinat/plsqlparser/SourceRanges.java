@@ -0,0 +1,166 @@
+package spinat.plsqlparser;
+
+// the token ranges of AST nodes, kept apart from the nodes so that they cost
+// nothing when they are not needed: node identity to the index of the first
+// token and the index after the last token, in primitive arrays.
+// A parser records into it only if it was given one, see Parser.setSourceRanges.
+// The parser drops the ranges of the nodes of an alternative it gives up where
+// it knows the alternative is given up, see Parser.backtrack. Other nodes that
+// are not part of the result keep their range as long as this object lives.
+// The table is used by one thread and takes no lock, until bodies are parsed
+// on other threads (Parser.parseBodies or the lazy bodies of a skeleton parse),
+// from then on it is shared: every access takes the lock and nothing is dropped.
+public final class SourceRanges {
+
+    private Object[] keys = new Object[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int size = 0;
+    // the keys in the order they were added, for reset
+    private Object[] log = new Object[32];
+    private boolean shared = false;
+
+    private int slot(Object[] ks, Object node) {
+        int mask = ks.length - 1;
+        int i = System.identityHashCode(node) * 0x9E3779B9 >>> 7 & mask;
+        while (ks[i] != null && ks[i] != node) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // from now on other threads may record too. Called by the parsing thread
+    // before it hands out the nodes or the bodies
+    void share() {
+        if (!this.shared) {
+            synchronized (this) {
+                this.shared = true;
+            }
+        }
+    }
+
+    public void put(Object node, int start, int end) {
+        if (this.shared) {
+            synchronized (this) {
+                doPut(node, start, end);
+            }
+        } else {
+            doPut(node, start, end);
+        }
+    }
+
+    private void doPut(Object node, int start, int end) {
+        int i = slot(this.keys, node);
+        if (this.keys[i] == null) {
+            if (2 * (this.size + 1) > this.keys.length) {
+                rehash();
+                i = slot(this.keys, node);
+            }
+            this.keys[i] = node;
+            if (this.size == this.log.length) {
+                Object[] l = new Object[2 * this.size];
+                System.arraycopy(this.log, 0, l, 0, this.size);
+                this.log = l;
+            }
+            this.log[this.size] = node;
+            this.size++;
+        }
+        this.starts[i] = start;
+        this.ends[i] = end;
+    }
+
+    // put the range of node unless it has one already
+    void add(Object node, int start, int end) {
+        if (node == null) {
+            return;
+        }
+        if (this.shared) {
+            synchronized (this) {
+                if (this.keys[slot(this.keys, node)] == null) {
+                    doPut(node, start, end);
+                }
+            }
+        } else if (this.keys[slot(this.keys, node)] == null) {
+            doPut(node, start, end);
+        }
+    }
+
+    // the number of nodes added so far, for reset
+    int mark() {
+        return this.size;
+    }
+
+    // drop the ranges of the nodes added after mark m. The nodes are removed
+    // in reverse order, a node added later is never in the probe sequence of
+    // one added before it. Does nothing once the table is shared
+    void reset(int m) {
+        if (this.shared) {
+            return;
+        }
+        while (this.size > m) {
+            this.size--;
+            Object node = this.log[this.size];
+            this.log[this.size] = null;
+            this.keys[slot(this.keys, node)] = null;
+        }
+    }
+
+    // the keys are added again in the order of the log, so that reset still
+    // only removes the last key of a probe sequence
+    private void rehash() {
+        int n = this.keys.length * 2;
+        Object[] ks = this.keys;
+        int[] ss = this.starts;
+        int[] es = this.ends;
+        this.keys = new Object[n];
+        this.starts = new int[n];
+        this.ends = new int[n];
+        for (int j = 0; j < this.size; j++) {
+            Object node = this.log[j];
+            int o = slot(ks, node);
+            int i = slot(this.keys, node);
+            this.keys[i] = node;
+            this.starts[i] = ss[o];
+            this.ends[i] = es[o];
+        }
+    }
+
+    // the index of the first token of node, -1 if it is not known
+    public int start(Object node) {
+        if (this.shared) {
+            synchronized (this) {
+                return doStart(node);
+            }
+        }
+        return doStart(node);
+    }
+
+    private int doStart(Object node) {
+        int i = slot(this.keys, node);
+        return this.keys[i] == null ? -1 : this.starts[i];
+    }
+
+    // the index after the last token of node, -1 if it is not known
+    public int end(Object node) {
+        if (this.shared) {
+            synchronized (this) {
+                return doEnd(node);
+            }
+        }
+        return doEnd(node);
+    }
+
+    private int doEnd(Object node) {
+        int i = slot(this.keys, node);
+        return this.keys[i] == null ? -1 : this.ends[i];
+    }
+
+    public int size() {
+        if (this.shared) {
+            synchronized (this) {
+                return this.size;
+            }
+        }
+        return this.size;
+    }
+}
@@ -0,0 +1,36 @@
+package spinat.plsqlparser;
+
+// an identifier from the symbol table Symbols, there is one Symbol in use per
+// distinct name, so symbols are compared by identity
+public final class Symbol {
+
+    // the canonical name: upper case for unquoted identifiers, as written
+    // for quoted ones
+    public final String name;
+    final int hash;
+    // the keyword id of the name if it is written unquoted, see Keywords
+    final int keyword;
+    private String lower;
+
+    Symbol(String name, int hash) {
+        this.name = name;
+        this.hash = hash;
+        this.keyword = Keywords.lookup(name);
+    }
+
+    // the name in lower case, computed once.
+    // If two threads race here both compute the same string
+    public String lower() {
+        String s = this.lower;
+        if (s == null) {
+            s = this.name.toLowerCase();
+            this.lower = s;
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
@@ -0,0 +1,162 @@
+package spinat.plsqlparser;
+
+import java.lang.ref.WeakReference;
+
+// the symbol table for identifiers, shared by all sources parsed in this JVM
+// so that each distinct name is stored once. The scanner canonicalizes an
+// unquoted identifier to upper case, a quoted identifier keeps its case,
+// so abc and "ABC" are the same symbol.
+// The table holds its symbols weakly: a symbol is kept as long as a token,
+// an AST node or a parser refers to it, after that it may be collected and
+// its slot is reused. A name that is looked up again then gets a new symbol,
+// there is no other one left to compare it with. So the table does not grow
+// with the number of sources that were ever parsed, only with the names that
+// are in use.
+// Lookups do not lock: the table is only written under the lock and the
+// entries are immutable, a reader that misses tries again under the lock.
+public final class Symbols {
+
+    public static final Symbols SHARED = new Symbols();
+
+    private static final class Entry extends WeakReference<Symbol> {
+
+        final int hash;
+
+        Entry(Symbol sym) {
+            super(sym);
+            this.hash = sym.hash;
+        }
+    }
+
+    private volatile Entry[] table = new Entry[4096];
+    // the used slots, including those whose symbol was collected
+    private int size = 0;
+
+    private static char upper(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+    }
+
+    private static int hash(CharSequence s, int from, int to, boolean upper) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            h = 31 * h + (upper ? upper(c) : c);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(Symbol x, CharSequence s, int from, int to, boolean upper) {
+        String n = x.name;
+        if (n.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < n.length(); i++) {
+            char c = s.charAt(from + i);
+            if (n.charAt(i) != (upper ? upper(c) : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the symbol for the chars from..to of s, upper says if the chars
+    // are an unquoted identifier. Only ASCII letters are upper cased,
+    // these are the only letters of an unquoted identifier
+    public Symbol lookup(CharSequence s, int from, int to, boolean upper) {
+        int h = hash(s, from, to, upper);
+        Entry[] t = this.table;
+        int mask = t.length - 1;
+        for (int i = h & mask;; i = (i + 1) & mask) {
+            Entry e = t[i];
+            if (e == null) {
+                return add(s, from, to, upper, h);
+            }
+            if (e.hash == h) {
+                Symbol x = e.get();
+                if (x != null && matches(x, s, from, to, upper)) {
+                    return x;
+                }
+            }
+        }
+    }
+
+    // the symbol with this canonical name
+    public Symbol symbol(String name) {
+        return lookup(name, 0, name.length(), false);
+    }
+
+    // the number of symbols that are still in use
+    public synchronized int size() {
+        int n = 0;
+        for (Entry e : this.table) {
+            if (e != null && e.get() != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // the symbol is put into the first slot of the probe sequence whose
+    // symbol was collected, or at its end
+    private synchronized Symbol add(CharSequence s, int from, int to, boolean upper, int h) {
+        Entry[] t = this.table;
+        int mask = t.length - 1;
+        int i = h & mask;
+        int free = -1;
+        for (Entry e = t[i]; e != null; e = t[i]) {
+            Symbol x = e.get();
+            if (x == null) {
+                if (free < 0) {
+                    free = i;
+                }
+            } else if (e.hash == h && matches(x, s, from, to, upper)) {
+                return x;
+            }
+            i = (i + 1) & mask;
+        }
+        StringBuilder b = new StringBuilder(to - from);
+        for (int k = from; k < to; k++) {
+            b.append(upper ? upper(s.charAt(k)) : s.charAt(k));
+        }
+        Symbol res = new Symbol(b.toString(), h);
+        if (free >= 0) {
+            t[free] = new Entry(res);
+            return res;
+        }
+        t[i] = new Entry(res);
+        this.size++;
+        if (this.size * 2 > t.length) {
+            rehash(t);
+        }
+        return res;
+    }
+
+    // the entries whose symbol was collected are dropped, the table only
+    // grows if it is still half full after that
+    private void rehash(Entry[] t) {
+        int live = 0;
+        for (Entry e : t) {
+            if (e != null && e.get() != null) {
+                live++;
+            }
+        }
+        int n = t.length;
+        while (live * 4 > n) {
+            n = n * 2;
+        }
+        Entry[] nt = new Entry[n];
+        int m = n - 1;
+        this.size = 0;
+        for (Entry e : t) {
+            if (e != null && e.get() != null) {
+                int j = e.hash & m;
+                while (nt[j] != null) {
+                    j = (j + 1) & m;
+                }
+                nt[j] = e;
+                this.size++;
+            }
+        }
+        this.table = nt;
+    }
+}
@@ -2,12 +2,15 @@ package spinat.plsqlparser;
 
 public class Token {
 
-    final int col; // the column in the source code 
-    final int line; // the line in the source code 
+    private final LineIndex lines; // the line starts of the source, for line and column
     final int ipos; // the position where the ignored tokens before this token start 
     final int pos; // the absolute position in the string 
-    final String str; // the raw string 
+    private final int end; // the position after the token
+    private final CharSequence source; // the source the raw string is taken from, null if given
+    private String str; // the raw string, materialized on first use
     final TokenType ttype; // : tokentype (* the token type, i.e. classification *)
+    final int kw; // the keyword id for Ident tokens, see Keywords, or Keywords.NONE
+    final Symbol sym; // the symbol of Ident and QIdent tokens, see Symbols
 
     public Token(TokenType ttype,
             String str,
@@ -17,14 +20,67 @@ public class Token {
             int col) {
         this.ttype = ttype;
         this.str = str;
+        this.source = null;
+        this.sym = Scanner.symbol(ttype, str, 0, str.length());
+        this.kw = ttype == TokenType.Ident ? this.sym.keyword : Keywords.NONE;
         this.pos = pos;
+        this.end = pos + str.length();
         this.ipos = ipos;
-        this.line = line;
-        this.col = col;
+        // the token only needs its own line
+        this.lines = new LineIndex(pos - col, line, 1);
+    }
+
+    Token(TokenType ttype,
+            CharSequence source,
+            int pos,
+            int end,
+            int ipos,
+            LineIndex lines,
+            int kw,
+            Symbol sym) {
+        this.ttype = ttype;
+        this.kw = kw;
+        this.sym = sym;
+        this.str = null;
+        this.source = source;
+        this.pos = pos;
+        this.end = end;
+        this.ipos = ipos;
+        this.lines = lines;
+    }
+
+    // the line in the source code, starting at 1
+    public int line() {
+        return this.lines.line(this.pos);
+    }
+
+    // the column in the source code, starting at 0
+    public int col() {
+        return this.lines.col(this.pos);
+    }
+
+    // the raw string, if two threads race here both compute the same string
+    public String str() {
+        String s = this.str;
+        if (s == null) {
+            s = this.source.subSequence(this.pos, this.end).toString();
+            this.str = s;
+        }
+        return s;
+    }
+
+    // the text of the token without copying it if the source allows that,
+    // for a CharBuffer source this is a view into the buffer
+    public CharSequence text() {
+        String s = this.str;
+        if (s != null) {
+            return s;
+        }
+        return this.source.subSequence(this.pos, this.end);
     }
 
     @Override
     public String toString() {
-        return "<" + ttype + "/" + pos + "/" + ipos + "/" + line + "/" + col + ": " + str + ">";
+        return "<" + ttype + "/" + pos + "/" + ipos + "/" + line() + "/" + col() + ": " + str() + ">";
     }
 }
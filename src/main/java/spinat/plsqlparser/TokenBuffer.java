@@ -0,0 +1,206 @@
+package spinat.plsqlparser;
+
+import java.util.ArrayList;
+
+// the tokens of a source, stored in parallel primitive arrays instead of one
+// Token object per token. The text of a token is not stored, it is taken from
+// the source when needed. Token objects are created only on demand.
+public final class TokenBuffer {
+
+    private static final TokenType[] types = TokenType.values();
+
+    final CharSequence source;
+    private int size = 0;
+    private byte[] ttype;
+    private int[] pos; // the absolute position in the source
+    private int[] len; // the length of the token text
+    private int[] ipos; // the position where the ignored tokens before this token start
+    private short[] kw; // the keyword id, see Keywords
+    private Symbol[] sym; // the symbol of Ident and QIdent tokens, see Symbols
+    // the line starts of the source, line and column are computed from pos
+    LineIndex lines;
+    // false if the whitespace and comments were skipped, see Scanner.scanRelevant
+    boolean trivia = true;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, 16);
+    }
+
+    TokenBuffer(CharSequence source, int capacity) {
+        this.source = source;
+        this.ttype = new byte[capacity];
+        this.pos = new int[capacity];
+        this.len = new int[capacity];
+        this.ipos = new int[capacity];
+        this.kw = new short[capacity];
+        this.sym = new Symbol[capacity];
+    }
+
+    private void grow(int capacity) {
+        int n = Math.max(this.ttype.length * 2, capacity);
+        byte[] t = new byte[n];
+        System.arraycopy(this.ttype, 0, t, 0, this.size);
+        this.ttype = t;
+        this.pos = copy(this.pos, n);
+        this.len = copy(this.len, n);
+        this.ipos = copy(this.ipos, n);
+        short[] k = new short[n];
+        System.arraycopy(this.kw, 0, k, 0, this.size);
+        this.kw = k;
+        Symbol[] y = new Symbol[n];
+        System.arraycopy(this.sym, 0, y, 0, this.size);
+        this.sym = y;
+    }
+
+    private int[] copy(int[] a, int n) {
+        int[] res = new int[n];
+        System.arraycopy(a, 0, res, 0, this.size);
+        return res;
+    }
+
+    void add(TokenType tt, int start, int end, int istart, int keyword, Symbol symbol) {
+        if (this.size == this.ttype.length) {
+            grow(this.size + 1);
+        }
+        int i = this.size;
+        this.ttype[i] = (byte) tt.ordinal();
+        this.pos[i] = start;
+        this.len[i] = end - start;
+        this.ipos[i] = istart;
+        this.kw[i] = (short) keyword;
+        this.sym[i] = symbol;
+        this.size++;
+    }
+
+    // append the tokens from..to-1 of other, for the tokens after an edit:
+    // positions are moved by delta. An ipos equal to oldIpos becomes newIpos,
+    // the other ipos are moved by delta
+    void appendShifted(TokenBuffer other, int from, int to, int delta, int oldIpos, int newIpos) {
+        int n = to - from;
+        if (this.size + n > this.ttype.length) {
+            grow(this.size + n);
+        }
+        int d = this.size;
+        System.arraycopy(other.ttype, from, this.ttype, d, n);
+        System.arraycopy(other.pos, from, this.pos, d, n);
+        System.arraycopy(other.len, from, this.len, d, n);
+        System.arraycopy(other.ipos, from, this.ipos, d, n);
+        System.arraycopy(other.kw, from, this.kw, d, n);
+        System.arraycopy(other.sym, from, this.sym, d, n);
+        this.size += n;
+        if (delta == 0 && oldIpos == newIpos) {
+            return;
+        }
+        for (int i = d; i < this.size; i++) {
+            this.pos[i] += delta;
+            this.ipos[i] = this.ipos[i] == oldIpos ? newIpos : this.ipos[i] + delta;
+        }
+    }
+
+    // the index of the last token starting at or before position, -1 if there is none
+    public int indexAt(int position) {
+        int lo = 0;
+        int hi = this.size - 1;
+        int res = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.pos[mid] <= position) {
+                res = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return res;
+    }
+
+    // true if the whitespace and comments are in the buffer
+    public boolean hasTrivia() {
+        return this.trivia;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public TokenType type(int i) {
+        return types[this.ttype[i]];
+    }
+
+    public int pos(int i) {
+        return this.pos[i];
+    }
+
+    public int end(int i) {
+        return this.pos[i] + this.len[i];
+    }
+
+    public int ipos(int i) {
+        return this.ipos[i];
+    }
+
+    LineIndex lines() {
+        if (this.lines == null) {
+            this.lines = LineIndex.of(this.source);
+        }
+        return this.lines;
+    }
+
+    public int line(int i) {
+        return lines().line(this.pos[i]);
+    }
+
+    public int col(int i) {
+        return lines().col(this.pos[i]);
+    }
+
+    public int keyword(int i) {
+        return this.kw[i];
+    }
+
+    // the symbol of an Ident or QIdent token, null for other tokens
+    public Symbol symbol(int i) {
+        return this.sym[i];
+    }
+
+    // the text of token i, this creates a new string
+    public String str(int i) {
+        return this.source.subSequence(this.pos[i], this.pos[i] + this.len[i]).toString();
+    }
+
+    // the text of token i as a view into the source if the source supports
+    // that, e.g. a CharBuffer
+    public CharSequence text(int i) {
+        return this.source.subSequence(this.pos[i], this.pos[i] + this.len[i]);
+    }
+
+    public Token token(int i) {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("no token at " + i);
+        }
+        return new Token(types[this.ttype[i]], this.source, this.pos[i], this.pos[i] + this.len[i],
+                this.ipos[i], lines(), this.kw[i], this.sym[i]);
+    }
+
+    // a new buffer with only the tokens the parser needs, no whitespace and comments
+    public TokenBuffer relevant() {
+        TokenBuffer res = new TokenBuffer(this.source, Math.max(this.size, 1));
+        res.lines = lines();
+        res.trivia = false;
+        for (int i = 0; i < this.size; i++) {
+            if (Scanner.isRelevant(types[this.ttype[i]])) {
+                res.add(types[this.ttype[i]], this.pos[i], this.pos[i] + this.len[i], this.ipos[i], this.kw[i],
+                        this.sym[i]);
+            }
+        }
+        return res;
+    }
+
+    public ArrayList<Token> toList() {
+        ArrayList<Token> res = new ArrayList<Token>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            res.add(token(i));
+        }
+        return res;
+    }
+}
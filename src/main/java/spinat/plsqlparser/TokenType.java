@@ -39,5 +39,7 @@ public enum TokenType {
     Exclamation,
     Float,
     QString,
-    DollarDollarIdent
+    DollarDollarIdent,
+    // text the scanner could not read, only in the resilient mode
+    Error
 }
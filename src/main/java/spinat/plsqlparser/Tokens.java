@@ -0,0 +1,135 @@
+package spinat.plsqlparser;
+
+import java.util.Arrays;
+import java.util.List;
+
+// the token array shared by all Seq objects of one input.
+// A position in the token stream is just an index into this array.
+// The Seq for an index is created once and reused afterwards, so
+// moving forward or backtracking does not allocate new Seq objects.
+// If the tokens come from a TokenBuffer the Token objects are created
+// when they are first needed. WindowTokens scans while parsing and keeps
+// only a part of the tokens.
+class Tokens {
+
+    private final TokenBuffer buffer; // null if the tokens are given as list
+    private final Token[] tokens;
+    private final Seq[] seqs;
+    // the Res for "the head token as string", used by Combinator.token and forkw
+    private final Res<String>[] strings;
+
+    @SuppressWarnings("unchecked")
+    Tokens(List<Token> l, Seq first) {
+        this.buffer = null;
+        this.tokens = l.toArray(new Token[l.size()]);
+        // one more slot, the tail of the last token is a valid but empty Seq
+        this.seqs = new Seq[this.tokens.length + 1];
+        this.seqs[0] = first;
+        this.strings = (Res<String>[]) new Res<?>[this.tokens.length];
+    }
+
+    @SuppressWarnings("unchecked")
+    Tokens(TokenBuffer buffer, Seq first) {
+        this.buffer = buffer;
+        this.tokens = new Token[buffer.size()];
+        this.seqs = new Seq[this.tokens.length + 1];
+        this.seqs[0] = first;
+        this.strings = (Res<String>[]) new Res<?>[this.tokens.length];
+    }
+
+    // for WindowTokens, it has its own storage
+    Tokens() {
+        this.buffer = null;
+        this.tokens = null;
+        this.seqs = null;
+        this.strings = null;
+    }
+
+    // true if there is a token at i
+    boolean has(int i) {
+        return i < this.tokens.length;
+    }
+
+    // the index of the first token that can still be read, the tokens
+    // before it are dropped or not part of this token array
+    int firstIndex() {
+        return 0;
+    }
+
+    // the parser does not go back before the token at i, see Seq.commit
+    void commit(int i) {
+    }
+
+    // the remembered results of a Memo for these tokens, see Memo.table
+    Object memo = null;
+
+    // the furthest token where a parser failed and the union of what the
+    // failing parsers expected there, for the error message. A failure is
+    // reported with the preallocated First of the parser, so recording it
+    // does not allocate. The state belongs to one parse, a body skipped in
+    // skeleton mode is parsed later on its own ViewTokens
+    private int failIndex = -1;
+    private Token failToken = null;
+    private final long[] failed = new long[First.WORDS + 1];
+
+    void fail(int i, First expected) {
+        if (i < this.failIndex) {
+            return;
+        }
+        if (i > this.failIndex) {
+            this.failIndex = i;
+            this.failToken = get(i);
+            Arrays.fill(this.failed, 0L);
+        }
+        expected.addTo(this.failed);
+    }
+
+    // forget the failures, after error recovery they are not the furthest
+    // failures of the rest of the parse
+    void resetFail() {
+        this.failIndex = -1;
+        this.failToken = null;
+        Arrays.fill(this.failed, 0L);
+    }
+
+    int failIndex() {
+        return this.failIndex;
+    }
+
+    Token failToken() {
+        return this.failToken;
+    }
+
+    First failExpected() {
+        return First.of(this.failed);
+    }
+
+    // the slots are filled lazily, if two threads race for a slot
+    // both create an equal immutable object, so no synchronization is needed
+    Token get(int i) {
+        Token t = this.tokens[i];
+        if (t == null) {
+            t = this.buffer.token(i);
+            this.tokens[i] = t;
+        }
+        return t;
+    }
+
+    Seq seq(int i) {
+        Seq s = this.seqs[i];
+        if (s == null) {
+            s = new Seq(this, i);
+            this.seqs[i] = s;
+        }
+        return s;
+    }
+
+    Res<String> headString(int i) {
+        Res<String> r = this.strings[i];
+        if (r == null) {
+            r = new Res<String>(get(i).str(), seq(i + 1));
+            this.strings[i] = r;
+        }
+        return r;
+    }
+}
@@ -4,11 +4,38 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 
 public class Util {
 
     public static String loadFile(String filename) throws IOException {
         return IOUtils.toString(FileUtils.openInputStream(new File(filename)));
     }
+
+    public static String loadFile(String filename, Charset charset) throws IOException {
+        return mapFile(filename, charset).toString();
+    }
+
+    // memory map the file and decode it with the charset, the bytes are not
+    // copied to the heap, the chars are decoded once into the result.
+    // Malformed input is an error, it is not replaced silently
+    public static CharBuffer mapFile(String filename, Charset charset) throws IOException {
+        FileInputStream in = new FileInputStream(filename);
+        try {
+            FileChannel ch = in.getChannel();
+            MappedByteBuffer bytes = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(bytes);
+        } finally {
+            in.close();
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package spinat.plsqlparser;
+
+// the tokens of another token array from base on, with Seq objects of its own.
+// A body skipped in skeleton mode is parsed on a view, so the failures it
+// records (see Tokens.fail) are only its own, also when several bodies of one
+// source are parsed concurrently. The Token objects are those of the parent.
+// The slots grow when the parser reads past the expected size.
+final class ViewTokens extends Tokens {
+
+    private final Tokens parent;
+    private final int base;
+    private Seq[] seqs;
+    private Res<String>[] strings;
+
+    ViewTokens(Tokens parent, int base, int size) {
+        this.parent = parent instanceof ViewTokens ? ((ViewTokens) parent).parent : parent;
+        this.base = base;
+        this.seqs = new Seq[size + 1];
+        this.strings = newStrings(size + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Res<String>[] newStrings(int n) {
+        return (Res<String>[]) new Res<?>[n];
+    }
+
+    @Override
+    int firstIndex() {
+        return this.base;
+    }
+
+    @Override
+    boolean has(int i) {
+        return this.parent.has(i);
+    }
+
+    @Override
+    Token get(int i) {
+        return this.parent.get(i);
+    }
+
+    private int slot(int i) {
+        int k = i - this.base;
+        if (k < 0) {
+            throw new RuntimeException("token " + i + " is before the view at " + this.base);
+        }
+        if (k >= this.seqs.length) {
+            int n = Math.max(2 * this.seqs.length, k + 1);
+            Seq[] q = new Seq[n];
+            System.arraycopy(this.seqs, 0, q, 0, this.seqs.length);
+            Res<String>[] r = newStrings(n);
+            System.arraycopy(this.strings, 0, r, 0, this.strings.length);
+            this.seqs = q;
+            this.strings = r;
+        }
+        return k;
+    }
+
+    @Override
+    Seq seq(int i) {
+        int k = slot(i);
+        Seq s = this.seqs[k];
+        if (s == null) {
+            s = new Seq(this, i);
+            this.seqs[k] = s;
+        }
+        return s;
+    }
+
+    @Override
+    Res<String> headString(int i) {
+        Token t = get(i);
+        int k = slot(i);
+        Res<String> r = this.strings[k];
+        if (r == null) {
+            r = new Res<String>(t.str(), seq(i + 1));
+            this.strings[k] = r;
+        }
+        return r;
+    }
+}
@@ -0,0 +1,176 @@
+package spinat.plsqlparser;
+
+import java.util.Arrays;
+
+// the tokens of a source that is scanned while the parser reads it.
+// Only a window of the tokens is kept: the tokens before the committed
+// position (see Seq.commit) and the tokens more than maxBacktrack before
+// the furthest token read are dropped, reading them again is an error.
+// The largest backtrack distance that occurred is measured, it tells
+// how small maxBacktrack may be. Indexes are absolute token indexes,
+// slot 0 of the arrays is the token at base.
+final class WindowTokens extends Tokens {
+
+    private final CharSequence source;
+    private final Scanner sc;
+    private int istart = 0;
+    private boolean atEnd = false;
+
+    private Token[] tokens = new Token[1024];
+    // one more slot, the tail of the last token is a valid but empty Seq
+    private Seq[] seqs = new Seq[1025];
+    private Res<String>[] strings = newStrings(1024);
+    private int base = 0;
+    private int count = 0;
+
+    private final int maxBacktrack;
+    private int committed = 0;
+    private int furthest = 0;
+    private int backtrack = 0;
+
+    WindowTokens(CharSequence source, int maxBacktrack) {
+        this.source = source;
+        this.sc = new Scanner(source);
+        this.maxBacktrack = maxBacktrack;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Res<String>[] newStrings(int n) {
+        return (Res<String>[]) new Res<?>[n];
+    }
+
+    // the largest distance the parser went back from the furthest token read
+    int maxBacktrackSeen() {
+        return this.backtrack;
+    }
+
+    // the number of tokens in the window
+    int windowSize() {
+        return this.count;
+    }
+
+    @Override
+    boolean has(int i) {
+        while (i >= this.base + this.count && !this.atEnd) {
+            scanOne();
+        }
+        return i < this.base + this.count;
+    }
+
+    @Override
+    int firstIndex() {
+        return this.base;
+    }
+
+    @Override
+    void commit(int i) {
+        if (i > this.committed) {
+            this.committed = i;
+        }
+    }
+
+    // the slot of token i, updates the backtrack statistics
+    private int slot(int i) {
+        if (i > this.furthest) {
+            this.furthest = i;
+        } else if (this.furthest - i > this.backtrack) {
+            this.backtrack = this.furthest - i;
+        }
+        int k = i - this.base;
+        if (k < 0) {
+            throw new RuntimeException("token " + i + " was dropped, the parser went back "
+                    + (this.furthest - i) + " tokens, the committed position is " + this.committed);
+        }
+        return k;
+    }
+
+    @Override
+    Token get(int i) {
+        if (!has(i)) {
+            throw new RuntimeException("past end of seq");
+        }
+        return this.tokens[slot(i)];
+    }
+
+    @Override
+    Seq seq(int i) {
+        if (i > 0 && !has(i - 1)) {
+            throw new RuntimeException("past end of seq");
+        }
+        int k = slot(i);
+        Seq s = this.seqs[k];
+        if (s == null) {
+            s = new Seq(this, i);
+            this.seqs[k] = s;
+        }
+        return s;
+    }
+
+    @Override
+    Res<String> headString(int i) {
+        Token t = get(i);
+        int k = i - this.base;
+        Res<String> r = this.strings[k];
+        if (r == null) {
+            r = new Res<String>(t.str(), seq(i + 1));
+            this.strings[k] = r;
+        }
+        return r;
+    }
+
+    private void scanOne() {
+        int len = this.source.length();
+        while (this.sc.start < len) {
+            TokenType tt = this.sc.scan1(this.istart);
+            if (Scanner.isRelevant(tt)) {
+                Symbol y = Scanner.symbol(tt, this.source, this.sc.tstart, this.sc.start);
+                int kw = tt == TokenType.Ident ? y.keyword : Keywords.NONE;
+                append(new Token(tt, this.source, this.sc.tstart, this.sc.start, this.istart, this.sc.lines, kw, y));
+                this.istart = this.sc.start;
+                return;
+            }
+        }
+        append(new Token(TokenType.TheEnd, this.source, this.sc.start, this.sc.start, this.istart, this.sc.lines,
+                Keywords.NONE, null));
+        this.atEnd = true;
+    }
+
+    private void append(Token t) {
+        if (this.count == this.tokens.length) {
+            makeRoom();
+        }
+        this.tokens[this.count++] = t;
+    }
+
+    // drop the tokens that can not be read any more, grow if that frees
+    // less than half of the window
+    private void makeRoom() {
+        int keep = this.committed;
+        if (this.maxBacktrack >= 0) {
+            keep = Math.max(keep, this.furthest - this.maxBacktrack);
+        }
+        int drop = Math.max(0, Math.min(keep - this.base, this.count));
+        int n = this.tokens.length;
+        if (drop >= n / 2) {
+            // the seq after the last token is kept too
+            System.arraycopy(this.tokens, drop, this.tokens, 0, this.count - drop);
+            System.arraycopy(this.seqs, drop, this.seqs, 0, this.count - drop + 1);
+            System.arraycopy(this.strings, drop, this.strings, 0, this.count - drop);
+            Arrays.fill(this.tokens, this.count - drop, n, null);
+            Arrays.fill(this.seqs, this.count - drop + 1, n + 1, null);
+            Arrays.fill(this.strings, this.count - drop, n, null);
+        } else {
+            Token[] t = new Token[n * 2];
+            Seq[] q = new Seq[n * 2 + 1];
+            Res<String>[] r = newStrings(n * 2);
+            System.arraycopy(this.tokens, drop, t, 0, this.count - drop);
+            System.arraycopy(this.seqs, drop, q, 0, this.count - drop + 1);
+            System.arraycopy(this.strings, drop, r, 0, this.count - drop);
+            this.tokens = t;
+            this.seqs = q;
+            this.strings = r;
+        }
+        this.base += drop;
+        this.count -= drop;
+    }
+}
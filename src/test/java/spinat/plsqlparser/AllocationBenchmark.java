@@ -0,0 +1,138 @@
+package spinat.plsqlparser;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * measures the bytes allocated per token while parsing a generated package
+ * spec and body. This is not a unit test, run it with
+ * java -cp target/classes:target/test-classes spinat.plsqlparser.AllocationBenchmark [procedures]
+ */
+public class AllocationBenchmark {
+
+    static String generatePackage(int procedures) {
+        StringBuilder b = new StringBuilder();
+        b.append("create or replace package bench_pkg as\n");
+        for (int i = 0; i < procedures; i++) {
+            b.append("  procedure p").append(i).append("(a in number, b out varchar2);\n");
+            b.append("  function f").append(i).append("(x number) return number;\n");
+        }
+        b.append("end;\n/\n");
+        b.append("create or replace package body bench_pkg as\n");
+        b.append("  g_count number := 0;\n");
+        for (int i = 0; i < procedures; i++) {
+            b.append("  procedure p").append(i).append("(a in number, b out varchar2) is\n")
+                    .append("    l_result varchar2(200);\n")
+                    .append("    i integer;\n")
+                    .append("  begin\n")
+                    .append("    l_result := 'x' || to_char(a);\n")
+                    .append("    if a > 10 and a < 100 then\n")
+                    .append("      b := substr(l_result, 1, 10);\n")
+                    .append("    elsif a is null then\n")
+                    .append("      b := null;\n")
+                    .append("    else\n")
+                    .append("      b := l_result;\n")
+                    .append("    end if;\n")
+                    .append("    for i in 1 .. a loop\n")
+                    .append("      g_count := g_count + i * 2 - f").append(i).append("(i);\n")
+                    .append("    end loop;\n")
+                    .append("    select count(*) into i from dual where dummy = 'X';\n")
+                    .append("  exception\n")
+                    .append("    when no_data_found then\n")
+                    .append("      null;\n")
+                    .append("  end p").append(i).append(";\n");
+            b.append("  function f").append(i).append("(x number) return number is\n")
+                    .append("  begin\n")
+                    .append("    return case when x > 0 then x else -x end;\n")
+                    .append("  end;\n");
+        }
+        b.append("end;\n/\n");
+        return b.toString();
+    }
+
+    static ArrayList<Token> relevant(String s) {
+        ArrayList<Token> r = new ArrayList<Token>();
+        for (Token t : Scanner.scanAll(s)) {
+            if (Scanner.isRelevant(t)) {
+                r.add(t);
+            }
+        }
+        return r;
+    }
+
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return b.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // the heap needed to keep all tokens of the source alive, including whitespace and comments
+    static void retained(String src) {
+        int n = Scanner.scanBuffer(src).size();
+        long h0 = usedHeap();
+        ArrayList<Token> l = Scanner.scanAll(src);
+        for (Token t : l) {
+            t.str();
+        }
+        long h1 = usedHeap();
+        TokenBuffer b = Scanner.scanBuffer(src);
+        long h2 = usedHeap();
+        System.out.println("all tokens:              " + n);
+        System.out.printf("retained bytes/token, Token list:  %.1f%n", (h1 - h0) / (double) n);
+        System.out.printf("retained bytes/token, TokenBuffer: %.1f%n", (h2 - h1) / (double) n);
+        if (l.size() != b.size()) {
+            throw new RuntimeException("BUG");
+        }
+    }
+
+    public static void main(String[] args) {
+        int procedures = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String src = generatePackage(procedures);
+        ArrayList<Token> tokens = relevant(src);
+        // warm up, so that the JIT and class loading do not show up in the numbers
+        for (int i = 0; i < 5; i++) {
+            new Parser().paCRPackageSpecAndBody(new Seq(tokens));
+        }
+        final int rounds = 5;
+        long scan = 0;
+        long parse = 0;
+        for (int i = 0; i < rounds; i++) {
+            long a0 = allocatedBytes();
+            ArrayList<Token> l = relevant(src);
+            long a1 = allocatedBytes();
+            new Parser().paCRPackageSpecAndBody(new Seq(l));
+            long a2 = allocatedBytes();
+            scan += a1 - a0;
+            parse += a2 - a1;
+        }
+        long bscan = 0;
+        long bparse = 0;
+        for (int i = 0; i < rounds; i++) {
+            long a0 = allocatedBytes();
+            TokenBuffer b = Scanner.scanRelevant(src);
+            long a1 = allocatedBytes();
+            new Parser().paCRPackageSpecAndBody(new Seq(b));
+            long a2 = allocatedBytes();
+            bscan += a1 - a0;
+            bparse += a2 - a1;
+        }
+        double n = (double) tokens.size() * rounds;
+        System.out.println("tokens:                  " + tokens.size());
+        System.out.println("Token list:");
+        System.out.printf("  scan  bytes/token:     %.1f%n", scan / n);
+        System.out.printf("  parse bytes/token:     %.1f%n", parse / n);
+        System.out.printf("  total bytes/token:     %.1f%n", (scan + parse) / n);
+        System.out.println("TokenBuffer:");
+        System.out.printf("  scan  bytes/token:     %.1f%n", bscan / n);
+        System.out.printf("  parse bytes/token:     %.1f%n", bparse / n);
+        System.out.printf("  total bytes/token:     %.1f%n", (bscan + bparse) / n);
+        retained(src);
+    }
+}
@@ -0,0 +1,83 @@
+package spinat.plsqlparser;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * measures the precedence climbing in paClimb on expression heavy code: time
+ * per round, allocated bytes and the number of AST nodes. This is not a unit test, run it with
+ * java -cp target/classes:target/test-classes spinat.plsqlparser.ExpressionBenchmark [statements]
+ */
+public class ExpressionBenchmark {
+
+    static String generateExpressions(int statements) {
+        StringBuilder b = new StringBuilder();
+        b.append("begin\n");
+        for (int i = 0; i < statements; i++) {
+            b.append("  x").append(i % 7).append(" := a").append(i).append(" + b * (c - d) / 2 || e mod 3;\n");
+            b.append("  if a > ").append(i).append(" and b is not null or c like 'x%' and not d then\n")
+                    .append("    y := f(a, b + 1, g(c) * 2) - h.i.j;\n")
+                    .append("  elsif x between 1 and 10 and y in (1, 2, 3) then\n")
+                    .append("    z := case when a = b then c else d end;\n")
+                    .append("  end if;\n");
+            b.append("  p(a, b, c, d => e + 1);\n");
+        }
+        b.append("end;\n");
+        return b.toString();
+    }
+
+    static long nodes(Object o) {
+        if (o instanceof List) {
+            long n = 0;
+            for (Object x : (List) o) {
+                n += nodes(x);
+            }
+            return n;
+        }
+        if (o == null || !o.getClass().getName().startsWith("spinat.") || o.getClass().isEnum()) {
+            return 0;
+        }
+        long n = 1;
+        for (Field f : o.getClass().getFields()) {
+            if (!Modifier.isStatic(f.getModifiers())) {
+                try {
+                    n += nodes(f.get(o));
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return n;
+    }
+
+    static Object run(Parser p, Seq s) {
+        Res<Ast.Statement> r = p.pStatement.pa(s);
+        if (r == null) {
+            throw new RuntimeException("can not parse");
+        }
+        return r.v;
+    }
+
+    public static void main(String[] args) {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String src = generateExpressions(statements);
+        Seq s = new Seq(Scanner.scanRelevant(src));
+        Parser p = new Parser();
+        for (int i = 0; i < 10; i++) {
+            run(p, s);
+        }
+        int rounds = 20;
+        long time = 0;
+        long bytes = 0;
+        for (int i = 0; i < rounds; i++) {
+            long b0 = AllocationBenchmark.allocatedBytes();
+            long t0 = System.nanoTime();
+            run(p, s);
+            time += System.nanoTime() - t0;
+            bytes += AllocationBenchmark.allocatedBytes() - b0;
+        }
+        System.out.println("climbing: " + time / rounds / 1000 + " us/round, "
+                + bytes / rounds / 1024 + " KB/round, " + nodes(run(p, s)) + " nodes");
+    }
+}
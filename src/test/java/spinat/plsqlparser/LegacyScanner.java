@@ -0,0 +1,394 @@
+package spinat.plsqlparser;
+
+// a copy of Scanner with the comparison chain in scan1, the table driven scan1
+// in Scanner is checked against it in TestScanner.testScannerDifferential
+class LegacyScanner {
+
+    final CharSequence source;
+    final int len;
+
+    // our state
+    int start = 0;
+    int istart = 0;
+    // the line starts, every scan method that passes a newline adds one
+    LineIndex lines = new LineIndex();
+
+    // the start of the last token scanned, its type is returned by scan1
+    int tstart = 0;
+
+    LegacyScanner(CharSequence source) {
+        this.source = source;
+        this.len = source.length();
+    }
+
+    char get(int x) {
+        if (x > len) {
+            throw new RuntimeException("unexpcted end of source");
+        } else {
+            return source.charAt(x);
+        }
+    }
+
+    int scanString(int pos) {
+        if (get(pos) != '\'') {
+            throw new RuntimeException("BUG");
+        }
+
+        int x = pos + 1;
+        while (true) {
+            if (x >= len) {
+                throw new ScanException("Unexpected end of string");
+            }
+            char c = get(x);
+            if (c == '\'') {
+                if ((x + 1) < len && get(x + 1) == '\'') {
+                    x = x + 2;
+                } else {
+                    return x + 1;
+                }
+            } else {
+                if (c == '\n') {
+                    lines.add(x + 1);
+                }
+                x++;
+            }
+        }
+    }
+
+    int scanQIdent(int pos) {
+        if (get(pos) != '"') {
+            throw new RuntimeException("BUG");
+        }
+        int x = pos + 1;
+        while (true) {
+            if (x >= len) {
+                throw new ScanException("unexpected end of quoted identifier");
+            }
+            char c = get(x);
+            if (c == '"') {
+                return x + 1;
+            } else {
+                if (c == '\n') {
+                    lines.add(x + 1);
+                }
+                x++;
+            }
+        }
+    }
+
+    int scanMLComment(int pos) {
+        if (!(get(pos) == '/' && get(pos + 1) == '*')) {
+            throw new RuntimeException("BUG");
+        }
+        int x = pos + 2;
+        while (true) {
+            if (!(x < len - 1)) {
+                throw new ScanException("unexpected end of comment");
+            }
+            char c = get(x);
+            if (c == '*' && get(x + 1) == '/') {
+                return x + 2;
+            } else {
+                if (c == '\n') {
+                    lines.add(x + 1);
+                }
+                x++;
+            }
+        }
+    }
+
+    int scanEoLComment(int pos) {
+        if (!((pos < len - 1) && get(pos) == '-' && get(pos + 1) == '-')) {
+            throw new RuntimeException("BUG");
+        }
+        int x = pos + 2;
+        while (true) {
+            if (x < len) {
+                if (get(x) == '\n') {
+                    lines.add(x + 1);
+                    return x + 1;
+                } else {
+                    x++;
+                }
+            } else {
+                return x;
+            }
+        }
+    }
+
+    boolean isIdentMember(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || c == '#' || c == '$' || c == '_';
+    }
+
+    int scanIdent(int pos) {
+        int x = pos;
+        while (x < len && isIdentMember(get(x))) {
+            x++;
+        }
+        return x;
+    }
+
+    int ScanInt(int pos) {
+        int x = pos;
+        while (x < len && get(x) >= '0' && get(x) <= '9') {
+            x++;
+        }
+        return x;
+    }
+
+    int ScabWS(int pos) {
+        int x = pos;
+        while (x < len) {
+            char c = get(x);
+            if (c == '\n') {
+                lines.add(x + 1);
+            } else if (!Character.isWhitespace(c)) {
+                break;
+            }
+            x++;
+        }
+        return x;
+    }
+
+    int qString(int pos) {
+        // pos = q 
+        // pos +1 = '
+        // pos +2 = ende
+        final char ende;
+        switch (get(pos + 2)) {
+            case '[':
+                ende = ']';
+                break;
+            case '(':
+                ende = ')';
+                break;
+            case '{':
+                ende = '}';
+                break;
+            case '<':
+                ende = '>';
+                break;
+            case '\'':
+                throw new ScanException("' an not be ende of q string");
+            default:
+                ende = get(pos + 2);
+        }
+        int x = pos + 3;
+        while (true) {
+            if (x + 1 < len) {
+                char c = get(x);
+                if ((c == ende && get(x + 1) == '\'')) {
+                    return x + 2;
+                } else {
+                    if (c == '\n') {
+                        lines.add(x + 1);
+                    }
+                    x++;
+                }
+            }
+        }
+    }
+
+    int scanDollarDollarIdent(int pos) {
+        int p = scanIdent(pos + 2);
+        return p;
+    }
+
+    static boolean isArabicDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // the e has been found
+    int scanExpo(int pos) {
+        int x;
+        if (pos + 1 < len && (get(pos + 1) == '-' || get(pos + 1) == '+')) {
+            x = pos + 2;
+        } else {
+            x = pos + 1;
+        }
+        // an exponent at the end of the source is a ScanException, as in Scanner
+        if (x >= len || !isArabicDigit(get(x))) {
+            throw new ScanException("can not parse number");
+        }
+        while (x < len && isArabicDigit(get(x))) {
+            x++;
+        }
+        return x;
+    }
+
+    int scanFloat(int pos) {
+        if (get(pos) != '.') {
+            throw new RuntimeException("BUG");
+        }
+        int p = ScanInt(pos + 1);
+        if (p < len && (get(p) == 'e' || get(p) == 'E')) {
+            return scanExpo(p);
+        } else {
+            return p;
+        }
+    }
+
+    TokenType scanNumber(int pos) {
+        int x = ScanInt(pos);
+        // the problem : for i in 1..10 loop 
+        // we only have to check for the second "." *)
+        if (x >= len || (get(x) == '.' && x + 1 < len && get(x + 1) == '.')) {
+            return tokx(TokenType.Int, x);
+        } else {
+            final int p;
+            if (get(x) == '.') {
+                p = ScanInt(x + 1);
+            } else {
+                p = x;
+            }
+            if (p < len && (get(p) == 'E' || get(p) == 'e')) {
+                return tokx(TokenType.Float, scanExpo(p));
+            } else {
+                if (p == x) {/* no . */
+
+                    return tokx(TokenType.Int, x);
+                } else {
+                    return tokx(TokenType.Float, p);
+                }
+
+            }
+        }
+    }
+
+    TokenType tokx(TokenType tt, int next) {
+        this.tstart = this.start;
+        this.start = next;
+        return tt;
+    }
+
+    TokenType tok2(TokenType what) {
+        return tokx(what, this.start + 2);
+    }
+
+    TokenType tok1(TokenType what) {
+        return tokx(what, this.start + 1);
+    }
+
+
+    /*fun tokx what next =
+     let val (linen,coln)=advPos(line,col,start,next)
+     in
+     ({ttype= what, pos=start,ipos=istart, 
+     str= substring(str,start,next-start),
+     line=line,col=col},next,linen,coln)
+     end
+ 
+     */
+    TokenType check1() {
+        char c = get(start);
+        switch (c) {
+            case '\'':
+                return tokx(TokenType.String, scanString(start));
+            case '(':
+                return tok1(TokenType.LParen);
+            case ')':
+                return tok1(TokenType.RParen);
+            case '[':
+                return tok1(TokenType.LBracket);
+            case ']':
+                return tok1(TokenType.RBracket);
+            case '>':
+                return tok1(TokenType.Greater);
+            case '<':
+                return tok1(TokenType.Less);
+            case '-':
+                return tok1(TokenType.Minus);
+            case '.':
+                return tok1(TokenType.Dot);
+            case '+':
+                return tok1(TokenType.Plus);
+            case '/':
+                return tok1(TokenType.Div);
+            case '*':
+                return tok1(TokenType.Mul);
+            case ',':
+                return tok1(TokenType.Comma);
+            case ';':
+                return tok1(TokenType.Semi);
+            case '=':
+                return tok1(TokenType.Equal);
+            case '%':
+                return tok1(TokenType.Percent);
+            case ':':
+                return tok1(TokenType.Colon);
+            case '!':
+                return tok1(TokenType.Exclamation);
+            case '"':
+                return tokx(TokenType.QIdent, scanQIdent(this.start));
+            default:
+                if (isArabicDigit(c)) {
+                    return scanNumber(this.start);
+                } else if (Character.isWhitespace(c)) {
+                    return tokx(TokenType.WhiteSpace, ScabWS(this.start));
+                } else if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+                    return tokx(TokenType.Ident, scanIdent(this.start));
+                } else {
+                    throw new ScanException("unhandled char: " + c + " at line" + lines.line(this.start));
+                }
+        }
+    }
+
+    TokenType scan1(int istart) {
+        this.istart = istart;
+        if (this.start < len - 2) {
+            char a = source.charAt(this.start);
+            char b = source.charAt(this.start + 1);
+            if (a == '=' && b == '>') {
+                return tok2(TokenType.Arrow);
+            } else if (a == '<' && b == '=') {
+                return tok2(TokenType.LEqual);
+            } else if (a == '>' && b == '=') {
+                return tok2(TokenType.GEqual);
+            } else if (a == ':' && b == '=') {
+                return tok2(TokenType.Assign);
+            } else if (a == '<' && b == '>') {
+                return tok2(TokenType.NEqual);
+            } else if (a == '!' && b == '=') {
+                return tok2(TokenType.NEqual);
+            } else if (a == '|' && b == '|') {
+                return tok2(TokenType.StringAdd);
+            } else if (a == '-' && b == '-') {
+                return tokx(TokenType.EOLineComment, scanEoLComment(this.start));
+            } else if (a == '/' && b == '*') {
+                return tokx(TokenType.MultiLineComment, scanMLComment(this.start));
+            } else if (a == '*' && b == '*') {
+                return tok2(TokenType.Power);
+            } else if (a == '.' && b == '.') {
+                return tok2(TokenType.DotDot);
+            } else if (a == '<' && b == '<') {
+                return tok2(TokenType.LabelStart);
+            } else if (a == '>' && b == '>') {
+                return tok2(TokenType.LabelEnd);
+            } else if (a == 'q' && b == '\'') {
+                return tokx(TokenType.QString, qString(this.start));
+            } else if (a == '$' && b == '$') {
+                return tokx(TokenType.DollarDollarIdent, scanDollarDollarIdent(this.start));
+            } else {
+                if (get(start) == '.' && isArabicDigit(get(start + 1))) {
+                    return tokx(TokenType.Float, scanFloat(this.start));
+                } else {
+                    return check1();
+                }
+            }
+        } else {
+            return check1();
+        }
+    }
+
+    // type, start and end of all tokens
+    static String scan(CharSequence s) {
+        StringBuilder b = new StringBuilder();
+        LegacyScanner sc = new LegacyScanner(s);
+        while (sc.start < sc.len) {
+            TokenType tt = sc.scan1(0);
+            b.append(tt).append('/').append(sc.tstart).append('/').append(sc.start).append(' ');
+        }
+        return b.toString();
+    }
+}
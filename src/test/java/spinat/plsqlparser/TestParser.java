@@ -1,11 +1,30 @@
 package spinat.plsqlparser;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -168,6 +187,326 @@ public class TestParser {
         tpa(p.pStatement, "begin case bla when 'a' then bla(77); else a:=x;  END CASE; end");
     }
 
+    @Test
+    public void testSeqCursor() {
+        Seq s = scan("a := b + 1");
+        assertEquals(0, s.index());
+        assertSame(s.tail(), s.tail());
+        assertSame(s, s.tail().at(0));
+        assertEquals(2, s.tail().tail().index());
+        Parser p = new Parser();
+        Res<Ast.Statement> r = p.pStatement.pa(s);
+        assertSame(s.at(5), r.next);
+    }
+
+    @Test
+    public void testMemo() {
+        Parser p = new Parser();
+        p.memo.setEnabled(true);
+        tpa(p.pStatement, "for i in 1 .. 10 loop x := i; end loop");
+        assertTrue(p.memo.hits("pExpr") >= 1);
+        assertTrue(p.memo.misses("pExpr") >= 1);
+        p.memo.setEnabled(false);
+        long hits = p.memo.hits("pExpr");
+        tpa(p.pStatement, "for i in 1 .. 10 loop x := i; end loop");
+        assertEquals(hits, p.memo.hits("pExpr"));
+
+        // the parameterized type is tried first, number is parsed again as name
+        p.memo.setEnabled(true);
+        Seq s = scan("a number");
+        Res<Ast.Declaration> r = p.pDeclaration.pa(s);
+        assertTrue(r.next.head().ttype == TokenType.TheEnd);
+        assertTrue(p.memo.hits("pIdent") >= 1);
+        // the results are kept with the tokens
+        assertTrue(s.tokens().memo != null);
+        p.memo.clear(s);
+        assertTrue(s.tokens().memo == null);
+
+        String src = AllocationBenchmark.generatePackage(5);
+        Parser plain = new Parser();
+        String t = tree(plain.paCRPackageSpecAndBody(scan(src)));
+        // the bodies are compared too
+        assertTrue(t.contains("FromToLoopStatement("));
+        assertEquals(t, tree(p.paCRPackageSpecAndBody(scan(src))));
+        assertTrue(!t.equals(tree(plain.paCRPackageSpecAndBody(scan(src.replace("b := null;", "b := 1;"))))));
+    }
+
+    @Test
+    public void testSkeleton() {
+        String src = "package body pk is\n"
+                + "  procedure fwd;\n"
+                + "  procedure ext is language java name 'a.b()';\n"
+                + "  function f(a number default null) return boolean is\n"
+                + "    cursor c is select case when x is null then 1 else 2 end as y from t;\n"
+                + "    x number := case a when 1 then 2 end;\n"
+                + "    procedure nested(b varchar2) as\n"
+                + "    begin\n"
+                + "      if b is null then return; end if;\n"
+                + "    end nested;\n"
+                + "  begin\n"
+                + "    for r in c loop\n"
+                + "      declare z number; begin z := r.y; end;\n"
+                + "      case when a > 1 then nested('x'); else null; end case;\n"
+                + "    end loop;\n"
+                + "    return a is null;\n"
+                + "  exception when others then return false;\n"
+                + "  end f;\n"
+                + "  procedure fwd is begin <<l>> loop exit l; end loop l; end;\n"
+                + "end;";
+        Parser full = new Parser();
+        Parser sk = new Parser();
+        sk.setSkeleton(true);
+        Res<Ast.PackageBody> rf = full.pPackageBody.pa(scan(src));
+        Res<Ast.PackageBody> rs = sk.pPackageBody.pa(scan(src));
+        assertEquals(rf.next.index(), rs.next.index());
+        assertEquals(rf.v.declarations.size(), rs.v.declarations.size());
+        Ast.FunctionDefinition ff = (Ast.FunctionDefinition) rf.v.declarations.get(2);
+        Ast.FunctionDefinition fs = (Ast.FunctionDefinition) rs.v.declarations.get(2);
+        assertEquals(ff.functionheading.name.val, fs.functionheading.name.val);
+        assertNull(ff.getLazyBlock());
+        Ast.LazyBlock lazy = fs.getLazyBlock();
+        assertTrue(!lazy.isResolved());
+        Ast.Block b = fs.getBlock();
+        assertTrue(lazy.isResolved());
+        assertSame(b, lazy.resolve());
+        assertEquals(ff.getBlock().statements.size(), b.statements.size());
+        assertEquals(ff.getBlock().declarations.size(), b.declarations.size());
+        assertNotNull(b.exceptionBlock);
+        // nested bodies of a resolved block are lazy again
+        assertTrue(b.declarations.get(2) instanceof Ast.ProcedureDefinition);
+        assertNotNull(((Ast.ProcedureDefinition) b.declarations.get(2)).getLazyBlock());
+    }
+
+    @Test
+    public void testParallelBodies() throws Exception {
+        String src = AllocationBenchmark.generatePackage(50);
+        T2<Ast.PackageSpec, Ast.PackageBody> full = PLSQLParserUtils.parsePackageSpecBody(src);
+        ExecutorService ex = Executors.newFixedThreadPool(4);
+        try {
+            T2<Ast.PackageSpec, Ast.PackageBody> par = PLSQLParserUtils.parsePackageSpecBodyParallel(src, ex);
+            List<Ast.Declaration> fd = full.f2.declarations;
+            List<Ast.Declaration> pd = par.f2.declarations;
+            assertEquals(fd.size(), pd.size());
+            for (int i = 0; i < fd.size(); i++) {
+                assertEquals(fd.get(i).getClass(), pd.get(i).getClass());
+                if (pd.get(i) instanceof Ast.ProcedureDefinition) {
+                    Ast.Block fb = ((Ast.ProcedureDefinition) fd.get(i)).getBlock();
+                    Ast.Block pb = ((Ast.ProcedureDefinition) pd.get(i)).getBlock();
+                    assertNull(((Ast.ProcedureDefinition) pd.get(i)).getLazyBlock());
+                    assertEquals(fb.statements.size(), pb.statements.size());
+                }
+            }
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    @Test
+    public void testSkippedBodyError() throws Exception {
+        String src = "package body pk is\n"
+                + "  procedure a is begin\n"
+                + "    x := 1 +;\n"
+                + "  end;\n"
+                + "  procedure b is begin null; end;\n"
+                + "end;";
+        Parser sk = new Parser();
+        sk.setSkeleton(true);
+        Res<Ast.PackageBody> r = sk.pPackageBody.pa(scan(src));
+        Ast.LazyBlock lazy = ((Ast.ProcedureDefinition) r.v.declarations.get(0)).getLazyBlock();
+        try {
+            lazy.resolve();
+            assertTrue(false);
+        } catch (ParseException e) {
+            // the failures are those of the body, not of the skeleton parse
+            assertEquals(3, e.furthestToken.line());
+            assertTrue(e.getMessage(), e.getMessage().contains("found ';'"));
+        }
+        ExecutorService ex = Executors.newFixedThreadPool(2);
+        try {
+            Parser p = new Parser();
+            p.parseBodies(sk.pPackageBody.pa(scan(src)).v.declarations, ex);
+            assertTrue(false);
+        } catch (ParseException e) {
+            assertEquals(3, e.furthestToken.line());
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testBatch() throws Exception {
+        File dir = tmp.newFolder("schema");
+        File sub = new File(dir, "sub");
+        sub.mkdir();
+        FileUtils.writeStringToFile(new File(dir, "a.pks"), "create or replace package a is procedure p; end;\n/\n");
+        FileUtils.writeStringToFile(new File(sub, "a.pkb"), "create or replace package body a is procedure p is begin null; end; end;\n/\n");
+        FileUtils.writeStringToFile(new File(sub, "bad.pkb"), "create or replace package body b is procedure p is begin x := ; end; end;");
+        FileUtils.writeStringToFile(new File(dir, "both.sql"), AllocationBenchmark.generatePackage(20));
+        FileUtils.writeStringToFile(new File(dir, "notes.txt"), "not parsed");
+        ExecutorService ex = Executors.newFixedThreadPool(2);
+        final List<BatchParser.Result> results = Collections.synchronizedList(new ArrayList<BatchParser.Result>());
+        try {
+            int errors = new BatchParser(ex).parse(dir, new BatchParser.Listener() {
+
+                @Override
+                public void done(BatchParser.Result result) {
+                    results.add(result);
+                }
+            });
+            assertEquals(1, errors);
+        } finally {
+            ex.shutdown();
+        }
+        assertEquals(4, results.size());
+        int specs = 0;
+        int bodies = 0;
+        for (BatchParser.Result r : results) {
+            assertEquals(r.file.getName().equals("bad.pkb"), !r.isOk());
+            specs += r.specs.size();
+            bodies += r.bodies.size();
+        }
+        assertEquals(2, specs);
+        assertEquals(2, bodies);
+    }
+
+    // the tree below o as a string
+    static String tree(Object o) {
+        StringBuilder b = new StringBuilder();
+        tree(o, b);
+        return b.toString();
+    }
+
+    static void tree(Object o, StringBuilder b) {
+        if (o instanceof List) {
+            b.append('[');
+            for (Object x : (List) o) {
+                tree(x, b);
+                b.append(',');
+            }
+            b.append(']');
+        } else if (o != null && o.getClass().getName().startsWith("spinat.") && !o.getClass().isEnum()) {
+            b.append(o.getClass().getSimpleName()).append('(');
+            for (Field f : o.getClass().getFields()) {
+                if (!Modifier.isStatic(f.getModifiers())) {
+                    b.append(f.getName()).append('=');
+                    try {
+                        tree(f.get(o), b);
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
+                    b.append(' ');
+                }
+            }
+            Ast.Block body = body(o);
+            if (body != null) {
+                b.append("block=");
+                tree(body, b);
+            }
+            b.append(')');
+        } else {
+            b.append(o);
+        }
+    }
+
+    // the body of a procedure or function definition, it is not a public field
+    static Ast.Block body(Object o) {
+        if (o instanceof Ast.ProcedureDefinition) {
+            return ((Ast.ProcedureDefinition) o).getBlock();
+        }
+        if (o instanceof Ast.FunctionDefinition) {
+            return ((Ast.FunctionDefinition) o).getBlock();
+        }
+        return null;
+    }
+
+    // arithmetic, is null and simple names in parentheses, the rest as tree
+    static String infix(Ast.Expression e) {
+        if (e instanceof Ast.BinopExpression) {
+            Ast.BinopExpression b = (Ast.BinopExpression) e;
+            return "(" + infix(b.expr1) + " " + b.binop + " " + infix(b.expr2) + ")";
+        }
+        if (e instanceof Ast.UnaryMinusExpression) {
+            return "-" + infix(((Ast.UnaryMinusExpression) e).expr);
+        }
+        if (e instanceof Ast.IsNullExpr) {
+            Ast.IsNullExpr n = (Ast.IsNullExpr) e;
+            return "(" + infix(n.expr) + (n.not ? " IS NOT NULL)" : " IS NULL)");
+        }
+        if (e instanceof Ast.VarOrCallExpression) {
+            List<Ast.CallPart> l = ((Ast.VarOrCallExpression) e).callparts;
+            if (l.size() == 1 && l.get(0) instanceof Ast.Component) {
+                return ((Ast.Component) l.get(0)).ident.val;
+            }
+        }
+        if (e instanceof Ast.CNumber) {
+            return ((Ast.CNumber) e).val.toString();
+        }
+        return tree(e);
+    }
+
+    @Test
+    public void testExpressions() {
+        String[][] exprs = {
+            {"a", "A"},
+            {"-a", "-A"},
+            {"a + b * c - d / e mod f || g", "(((A ADD (B MUL C)) MINUS ((D DIV E) MOD F)) CONCAT G)"},
+            {"a ** 2 * b", "((A POWER 2) MUL B)"},
+            {"a / b / c", "((A DIV B) DIV C)"},
+            {"-a * b", "(-A MUL B)"},
+            {"x is null", "(X IS NULL)"},
+            {"x is not null", "(X IS NOT NULL)"},
+            {"a + 1 is not null", "((A ADD 1) IS NOT NULL)"}};
+        Parser p = new Parser();
+        for (String[] e : exprs) {
+            Res<Ast.Expression> r = p.paExpr(scan(e[0]));
+            assertTrue(e[0], r.next.head().ttype == TokenType.TheEnd);
+            assertEquals(e[0], e[1], infix(r.v));
+        }
+        Res<Ast.Expression> r = p.paExpr(scan("a"));
+        assertTrue(!(r.v instanceof Ast.OrExpr));
+        r = p.paExpr(scan("a and b or c"));
+        assertEquals(2, ((Ast.OrExpr) r.v).exprs.size());
+        r = p.paExpr(scan("x is not null and y is null"));
+        Ast.AndExpr a = (Ast.AndExpr) r.v;
+        assertEquals("(X IS NOT NULL)", infix(a.exprs.get(0)));
+        assertEquals("(Y IS NULL)", infix(a.exprs.get(1)));
+        r = p.paExpr(scan("a not like b escape c or x between 1 and 2"));
+        assertEquals(2, ((Ast.OrExpr) r.v).exprs.size());
+        assertTrue(((Ast.OrExpr) r.v).exprs.get(0) instanceof Ast.LikeExpression);
+        assertTrue(((Ast.LikeExpression) ((Ast.OrExpr) r.v).exprs.get(0)).not);
+    }
+
+    @Test
+    public void testComments() {
+        String src = "create or replace package doc is\n"
+                + "  -- the first one\n"
+                + "  /* with two\n     comments */\n"
+                + "  procedure p(a number); -- after p\n"
+                + "\n"
+                + "  -- returns x\n"
+                + "  function f return number;\n"
+                + "  x number; -- not a heading\n"
+                + "end;";
+        Comments comments = new Comments();
+        TokenBuffer b = Scanner.scanRelevant(src, comments);
+        assertEquals(5, comments.size());
+        SourceRanges ranges = new SourceRanges();
+        Parser p = new Parser();
+        p.setSourceRanges(ranges);
+        Res<Ast.PackageSpec> r = p.pCRPackage.pa(new Seq(b));
+        assertEquals(TokenType.TheEnd, r.next.head().ttype);
+        Ast.ProcedureHeading ph = ((Ast.ProcedureDeclaration) r.v.declarations.get(0)).procedureheading;
+        Ast.FunctionHeading fh = ((Ast.FunctionDeclaration) r.v.declarations.get(1)).functionheading;
+        assertEquals(Arrays.asList("-- the first one\n", "/* with two\n     comments */"), comments.leading(ph, ranges));
+        assertEquals(Arrays.asList("-- after p\n"), comments.trailing(ph, ranges));
+        assertEquals(Arrays.asList("-- returns x\n"), comments.leading(fh, ranges));
+        assertEquals(0, comments.trailing(fh, ranges).size());
+        assertEquals("procedure", b.str(ranges.start(ph)));
+    }
+
     @Test
     public void testForall() {
         Parser p = new Parser();
@@ -198,4 +537,461 @@ public class TestParser {
         tpa(p.pCRPackageBody, s);
     }
 
+
+    @Test
+    public void testScript() {
+        String script = "create or replace package a is\n  c constant varchar2(10) := 'x\n/\n';\nend;\n/\n"
+                + "create or replace package body a is procedure p is begin null; end; end;\n/\n"
+                + "begin\n  a.p;\nend;\n/\n"
+                + "declare x number; begin x := 1; end;\n"
+                + "/\n\n/\n  /\n"
+                + "create package b is x number; end;\n"
+                + "create package body b is end;\n";
+        // small chunks so that units are split over several reads
+        for (int chunk : new int[]{7, 64 * 1024}) {
+            ScriptParser sp = new ScriptParser(new StringReader(script), new Parser(), chunk);
+            List<ScriptParser.Unit> units = new ArrayList<ScriptParser.Unit>();
+            while (sp.hasNext()) {
+                units.add(sp.next());
+            }
+            assertEquals(6, units.size());
+            assertEquals("A", units.get(0).spec.objectname.name.val);
+            assertEquals(1, units.get(0).line);
+            assertEquals("A", units.get(1).body.name.name.val);
+            assertEquals(7, units.get(1).line);
+            assertNotNull(units.get(2).block);
+            assertEquals(9, units.get(2).line);
+            assertEquals(script.indexOf("begin\n  a.p"), units.get(2).offset);
+            assertNotNull(units.get(3).block);
+            assertEquals(13, units.get(3).line);
+            assertEquals("B", units.get(4).spec.objectname.name.val);
+            assertEquals(18, units.get(4).line);
+            assertEquals("B", units.get(5).body.name.name.val);
+        }
+
+        ScriptParser sp = new ScriptParser(new StringReader("begin x := ; end;\n/\nbegin null; end;\n/\n"));
+        try {
+            sp.hasNext();
+            throw new RuntimeException("expected a parse error");
+        } catch (ParseException e) {
+            // the next unit can still be read
+        }
+        assertNotNull(sp.next().block);
+        assertTrue(!sp.hasNext());
+    }
+
+    @Test
+    public void testWindowed() {
+        String src = AllocationBenchmark.generatePackage(100);
+        Parser p = new Parser();
+        String full = tree(p.paCRPackageSpecAndBody(new Seq(Scanner.scanRelevant(src))));
+        // the bodies are part of the comparison, see tree
+        assertTrue(full.contains("SqlStatement("));
+        assertTrue(full.contains("FromToLoopStatement("));
+        Seq s = Seq.windowed(src, 16);
+        assertEquals(full, tree(p.paCRPackageSpecAndBody(s)));
+        WindowTokens w = (WindowTokens) s.tokens();
+        assertTrue(w.maxBacktrackSeen() <= 16);
+        assertTrue(w.windowSize() <= 1024);
+
+        // going back before the commit fails once the tokens are dropped
+        Seq start = Seq.windowed(src, -1);
+        Seq x = start;
+        for (int i = 0; i < 10; i++) {
+            x = x.tail();
+        }
+        x.commit();
+        assertEquals(start, start.at(0));
+        for (int i = 0; i < 5000; i++) {
+            x = x.tail();
+        }
+        try {
+            start.head();
+            throw new AssertionError("token 0 should be dropped");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("dropped"));
+        }
+        assertEquals(TokenType.Ident, x.head().ttype);
+    }
+
+    @Test
+    public void testWindowedMemoAndSkeleton() {
+        String src = AllocationBenchmark.generatePackage(20);
+        Parser p = new Parser();
+        String full = tree(p.paCRPackageSpecAndBody(new Seq(Scanner.scanRelevant(src))));
+        assertTrue(full.contains("FromToLoopStatement("));
+        p.memo.setEnabled(true);
+        p.memo.resetCounters();
+        assertEquals(full, tree(p.paCRPackageSpecAndBody(Seq.windowed(src, 16))));
+        assertTrue(p.memo.hits("pExpr") > 0);
+        p.memo.setEnabled(false);
+
+        // the skipped bodies would be dropped from the window
+        Parser sk = new Parser();
+        sk.setSkeleton(true);
+        try {
+            sk.paCRPackageSpecAndBody(Seq.windowed(src, 16));
+            throw new AssertionError("skeleton mode should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("windowed"));
+        }
+    }
+
+    @Test
+    public void testSymbols() throws Exception {
+        Parser p = new Parser();
+        Ast.Ident a = p.pIdent.pa(PLSQLParserUtils.scan("abc")).v;
+        Ast.Ident b = p.pIdent.pa(PLSQLParserUtils.scan("\"ABC\"")).v;
+        Ast.Ident c = p.pIdent.pa(PLSQLParserUtils.scan("aBc")).v;
+        assertSame(a.sym, b.sym);
+        assertSame(a.sym, c.sym);
+        assertSame(a.val, c.val);
+        assertEquals("ABC", a.val);
+        assertEquals("abc", a.sym.lower());
+        assertTrue(p.pIdent.pa(PLSQLParserUtils.scan("\"abc\"")).v.sym != a.sym);
+        assertSame(a.sym, new Ast.Ident("ABC").sym);
+        assertNotNull(Parser.c.forkw("nocopy_x").pa(PLSQLParserUtils.scan("NoCopy_X")));
+
+        // threads that add the same names concurrently get the same symbols
+        final Symbols table = new Symbols();
+        ExecutorService ex = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Symbol[]>> fs = new ArrayList<Future<Symbol[]>>();
+            for (int t = 0; t < 4; t++) {
+                fs.add(ex.submit(new Callable<Symbol[]>() {
+
+                    @Override
+                    public Symbol[] call() {
+                        Symbol[] res = new Symbol[20000];
+                        for (int i = 0; i < res.length; i++) {
+                            res[i] = table.lookup("n" + i, 0, ("n" + i).length(), true);
+                        }
+                        return res;
+                    }
+                }));
+            }
+            Symbol[] first = fs.get(0).get();
+            for (Future<Symbol[]> f : fs) {
+                Symbol[] x = f.get();
+                for (int i = 0; i < x.length; i++) {
+                    assertSame(first[i], x[i]);
+                    assertEquals("N" + i, x[i].name);
+                }
+            }
+            assertEquals(20000, table.size());
+            assertSame(first[7], table.symbol("N7"));
+        } finally {
+            ex.shutdown();
+        }
+
+        // symbols that are no longer used are dropped
+        Symbols weak = new Symbols();
+        Symbol kept = weak.symbol("KEPT");
+        for (int i = 0; i < 100000; i++) {
+            weak.symbol("X" + i);
+        }
+        for (int i = 0; i < 10 && weak.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, weak.size());
+        assertSame(kept, weak.symbol("KEPT"));
+    }
+
+    @Test
+    public void testFirstSets() {
+        Combinator cb = new Combinator();
+        final int[] calls = new int[1];
+        Pa<String> counted = new Pa<String>() {
+
+            @Override
+            protected Res<String> par(Seq s) {
+                calls[0]++;
+                return s.head().ttype == TokenType.Int ? s.headString() : null;
+            }
+
+            @Override
+            public First first() {
+                return First.of(TokenType.Int);
+            }
+
+            @Override
+            public String toString() {
+                return "counted";
+            }
+        };
+        Pa<String> p = cb.orn(new Pa[]{cb.forkw("begin"), cb.token(TokenType.Semi), counted});
+        assertEquals("BEGIN", p.pa(PLSQLParserUtils.scan("BEGIN")).v);
+        assertNull(p.pa(PLSQLParserUtils.scan("x")));
+        assertEquals(0, calls[0]);
+        assertEquals("1", p.pa(PLSQLParserUtils.scan("1")).v);
+        assertEquals(1, calls[0]);
+        assertTrue(p.first().canStart(PLSQLParserUtils.scan("begin").head()));
+        assertTrue(cb.ambiguities().isEmpty());
+
+        Pa<String> sw = cb.switchOn(new Pa[]{cb.forkw("end"), counted});
+        assertEquals("1", sw.pa(PLSQLParserUtils.scan("1")).v);
+        assertEquals("end", sw.pa(PLSQLParserUtils.scan("end")).v);
+
+        Parser parser = new Parser();
+        Pa<Object> bad = cb.switchOn(new Pa[]{parser.pIdent, cb.forkw("begin")});
+        try {
+            bad.pa(PLSQLParserUtils.scan("begin"));
+            throw new AssertionError("overlapping alternatives");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("BEGIN") || e.getMessage().contains("begin"));
+        }
+        assertEquals(1, cb.ambiguities().size());
+        assertNotNull(Parser.c.ambiguities());
+    }
+
+    @Test
+    public void testNoParsersBuiltWhileParsing() {
+        // the check is only on with the property, see the surefire configuration
+        Assume.assumeTrue(Pa.CHECK_SEALED);
+        Parser p = new Parser();
+        String body = "create or replace package body x is\n"
+                + "  type r is record (a number not null := 1, b varchar2(10 char));\n"
+                + "  type c is ref cursor return r;\n"
+                + "  type t is table of number not null index by binary_integer;\n"
+                + "  type v is varray(10) of date;\n"
+                + "  subtype s is integer range -1 .. 2 not null;\n"
+                + "  k constant number(10, 2) := 1;\n"
+                + "  ts timestamp with local time zone;\n"
+                + "  iv interval day to second;\n"
+                + "  l x.y%type;\n"
+                + "  e exception;\n"
+                + "  pragma restrict_references(default, wnds);\n"
+                + "  procedure p(a in out nocopy number, b out nocopy varchar2 character set any_cs := 'x') is\n"
+                + "    n number;\n"
+                + "  begin\n"
+                + "    savepoint sp;\n"
+                + "    if a like 'x%' escape '\\' and a not in (1, 2) or not a between 1 and 2 then\n"
+                + "      rollback to sp;\n"
+                + "    end if;\n"
+                + "    n := c%rowcount + f(a => 1, 2) + extract(year from sysdate) + sql%rowcount;\n"
+                + "    open c for 'select 1 from dual' using a, b;\n"
+                + "    fetch c bulk collect into n, a limit 10;\n"
+                + "    close c;\n"
+                + "    for i in reverse 1 .. 10 loop exit when i > 5; continue when i < 2; end loop;\n"
+                + "    for r in (select 1 from dual) loop null; end loop;\n"
+                + "    forall i in 1 .. 10 insert into t values (i);\n"
+                + "    execute immediate 'x' using in a, out b returning x into n;\n"
+                + "    goto l;\n"
+                + "    raise e;\n"
+                + "  exception when e or no_data_found then raise; when others then null;\n"
+                + "  end p;\n"
+                + "  function f return number is begin pipe row (1); return 1; end f;\n"
+                + "end x;\n";
+        Pa.seal(true);
+        try {
+            tpa(p.pCRPackageBody, body);
+            tpa(p.pCRPackageBody, AllocationBenchmark.generatePackage(2).split("/\n")[1]);
+        } finally {
+            Pa.seal(false);
+        }
+        try {
+            Pa.seal(true);
+            Parser.c.opt(p.pIdent);
+            throw new AssertionError("a parser was built while sealed");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            Pa.seal(false);
+        }
+    }
+
+    @Test
+    public void testFurthestFailure() {
+        Parser p = new Parser();
+        assertNull(p.check(p.pStatement, PLSQLParserUtils.scan("begin x := 1; end")));
+        ParseException e = p.check(p.pStatement, PLSQLParserUtils.scan("begin\n  x := 1 +;\nend"));
+        assertEquals(0, e.getStackTrace().length);
+        assertEquals(2, e.token.line());
+        assertTrue(e.getMessage(), e.getMessage().contains("found ';' expecting one of"));
+        e = p.check(p.pStatement, PLSQLParserUtils.scan("begin\n  if x then null; end;\nend"));
+        assertTrue(e.getMessage(), e.getMessage().startsWith("expecting end if at 2/18, parsed up to 2/21, found ';' expecting one of {if}"));
+        // the error is where the argument list stopped, not where the call was tried
+        e = p.check(p.pStatement, PLSQLParserUtils.scan("begin x := f(1, 2; end"));
+        assertTrue(e.getMessage(), e.getMessage().contains("1/17, found ';' expecting one of {RParen, Comma"));
+        e = p.check(p.pStatement, PLSQLParserUtils.scan("begin null; end; x"));
+        assertTrue(e.getMessage(), e.getMessage().startsWith("expecting end of input at 1/15"));
+    }
+
+    @Test
+    public void testRecovery() {
+        String src = "create package pk is\n"
+                + "  procedure a(x numbr y);\n"
+                + "  procedure b;\n"
+                + "end;\n"
+                + "/\n"
+                + "create package body pk is\n"
+                + "  x number := ;\n"
+                + "  y number;\n"
+                + "  procedure p1 is\n"
+                + "  begin\n"
+                + "    x := ;\n"
+                + "  end p1;\n"
+                + "  procedure p2 is\n"
+                + "    z number(;\n"
+                + "  begin\n"
+                + "    null;\n"
+                + "  end;\n"
+                + "  procedure p3 is begin null; end;\n"
+                + "end pk;\n"
+                + "/\n";
+        List<ParseException> errors = new ArrayList<ParseException>();
+        T2<Ast.PackageSpec, Ast.PackageBody> r = PLSQLParserUtils.parsePackageSpecBodyRecovering(src, errors);
+        assertEquals(4, errors.size());
+        assertEquals(2, errors.get(0).token.line());
+        assertEquals(7, errors.get(1).token.line());
+        assertEquals(11, errors.get(2).token.line());
+        assertEquals(14, errors.get(3).token.line());
+        List<Ast.Declaration> sd = r.f1.declarations;
+        assertEquals(2, sd.size());
+        assertTrue(sd.get(0) instanceof Ast.ErrorDeclaration);
+        assertEquals("B", ((Ast.ProcedureDeclaration) sd.get(1)).procedureheading.name.val.toUpperCase());
+        List<Ast.Declaration> bd = r.f2.declarations;
+        assertEquals(5, bd.size());
+        Ast.ErrorDeclaration e = (Ast.ErrorDeclaration) bd.get(0);
+        assertSame(errors.get(1), e.error);
+        assertEquals("x", e.tokens.get(0).str());
+        assertEquals(";", e.tokens.get(e.tokens.size() - 1).str());
+        assertTrue(bd.get(1) instanceof Ast.VariableDeclaration);
+        e = (Ast.ErrorDeclaration) bd.get(2);
+        assertEquals("procedure", e.tokens.get(0).str());
+        assertEquals(";", e.tokens.get(e.tokens.size() - 1).str());
+        Ast.ProcedureDefinition p2 = (Ast.ProcedureDefinition) bd.get(3);
+        assertTrue(p2.getBlock().declarations.get(0) instanceof Ast.ErrorDeclaration);
+        assertEquals(1, p2.getBlock().statements.size());
+        assertTrue(bd.get(4) instanceof Ast.ProcedureDefinition);
+
+        // without recovery the first error ends the parse
+        try {
+            PLSQLParserUtils.parsePackageSpecBody(src);
+            assertTrue(false);
+        } catch (ParseException ex) {
+            assertEquals(2, ex.token.line());
+        }
+
+        // the parallel package body recovers like the sequential one
+        String body = "package body pk is\n"
+                + "  x number := ;\n"
+                + "  y number;\n"
+                + "  procedure p is begin null; end;\n"
+                + "end;";
+        ExecutorService ex = Executors.newFixedThreadPool(2);
+        try {
+            Parser p = new Parser();
+            errors.clear();
+            p.setRecovery(errors);
+            List<Ast.Declaration> seq = p.pPackageBody.pa(scan(body)).v.declarations;
+            assertEquals(1, errors.size());
+            errors.clear();
+            List<Ast.Declaration> par = p.paPackageBodyParallel(scan(body), ex).v.declarations;
+            assertEquals(1, errors.size());
+            assertEquals(2, errors.get(0).token.line());
+            assertEquals(tree(seq), tree(par));
+            try {
+                p.parseBodies(par, ex);
+                assertTrue(false);
+            } catch (IllegalStateException e2) {
+                assertTrue(e2.getMessage().contains("recovery"));
+            }
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    static String rangeText(TokenBuffer b, SourceRanges ranges, Object node) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = ranges.start(node); i < ranges.end(node); i++) {
+            sb.append(sb.length() > 0 ? " " : "").append(b.str(i));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSourceRanges() {
+        String src = "package body r is\n"
+                + "  procedure p is\n"
+                + "    x number := 1;\n"
+                + "  begin\n"
+                + "    if x > 1 and x < 3 then x := f(x + 1, 2); end if;\n"
+                + "  end;\n"
+                + "end;";
+        TokenBuffer b = Scanner.scanRelevant(src);
+        SourceRanges ranges = new SourceRanges();
+        Parser p = new Parser();
+        p.setSourceRanges(ranges);
+        Res<Ast.PackageBody> r = p.pPackageBody.pa(new Seq(b));
+        Ast.ProcedureDefinition pd = (Ast.ProcedureDefinition) r.v.declarations.get(0);
+        assertEquals("x number := 1", rangeText(b, ranges, pd.getBlock().declarations.get(0)));
+        Ast.IfStatement is = (Ast.IfStatement) pd.getBlock().statements.get(0);
+        assertEquals("if x > 1 and x < 3 then x := f ( x + 1 , 2 ) ; end if", rangeText(b, ranges, is));
+        Ast.ExprAndStatements part = is.branches.get(0);
+        Ast.AndExpr and = (Ast.AndExpr) part.expr;
+        assertEquals("x > 1 and x < 3", rangeText(b, ranges, and));
+        assertEquals("x < 3", rangeText(b, ranges, and.exprs.get(1)));
+        Ast.Assignment as = (Ast.Assignment) part.statements.get(0);
+        assertEquals("x", rangeText(b, ranges, as.lvalue));
+        Ast.VarOrCallExpression call = (Ast.VarOrCallExpression) as.expression;
+        assertEquals("f ( x + 1 , 2 )", rangeText(b, ranges, call));
+        assertEquals("( x + 1 , 2 )", rangeText(b, ranges, call.callparts.get(1)));
+        assertEquals("x + 1", rangeText(b, ranges, ((Ast.CallOrIndexOp) call.callparts.get(1)).params.get(0)));
+        // enum values are shared, they have no range
+        assertEquals(-1, ranges.start(Ast.CmpOperator.GTH));
+
+        // the nodes of given up alternatives have no range: the identifier
+        // parsed as parameter name, the one tried as extract, the cursor
+        // expression of a for loop
+        ranges = new SourceRanges();
+        p.setSourceRanges(ranges);
+        Res<Ast.Statement> rs = p.pStatement.pa(scan("for i in 1 .. n loop x := f(a, b => g(c)); end loop"));
+        assertEquals(ranges.size(), withRange(rs.v, ranges, new IdentityHashMap<Object, Boolean>()));
+
+        SourceRanges sr = new SourceRanges();
+        Object[] nodes = new Object[300];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Object();
+            sr.add(nodes[i], i, i + 1);
+            if (i == 9) {
+                assertEquals(10, sr.mark());
+            }
+        }
+        sr.reset(10);
+        assertEquals(10, sr.size());
+        for (int i = 0; i < nodes.length; i++) {
+            assertEquals(i < 10 ? i : -1, sr.start(nodes[i]));
+        }
+    }
+
+    // the number of nodes below o that have a range
+    static int withRange(Object o, SourceRanges ranges, IdentityHashMap<Object, Boolean> seen) {
+        if (o == null || seen.containsKey(o)) {
+            return 0;
+        }
+        seen.put(o, Boolean.TRUE);
+        if (o instanceof List) {
+            int n = 0;
+            for (Object x : (List) o) {
+                n += withRange(x, ranges, seen);
+            }
+            return n;
+        }
+        if (!o.getClass().getName().startsWith("spinat.") || o.getClass().isEnum()) {
+            return 0;
+        }
+        int n = ranges.start(o) >= 0 ? 1 : 0;
+        for (Field f : o.getClass().getFields()) {
+            if (!Modifier.isStatic(f.getModifiers())) {
+                try {
+                    n += withRange(f.get(o), ranges, seen);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return n + withRange(body(o), ranges, seen);
+    }
 }
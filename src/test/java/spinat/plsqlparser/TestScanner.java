@@ -1,8 +1,19 @@
 package spinat.plsqlparser;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  *
@@ -16,7 +27,7 @@ public class TestScanner {
     // decompose String str and check that token i is equal to s
     static void chk(String str, int i, String s) {
         ArrayList<Token> a = Scanner.scanAll(str);
-        Assert.assertEquals(a.get(i).str, s);
+        Assert.assertEquals(a.get(i).str(), s);
     }
 
     // decompose the String s into tokens and the list of tokens is equal to
@@ -25,7 +36,7 @@ public class TestScanner {
         ArrayList<Token> a = Scanner.scanAll(str);
         Assert.assertEquals(s.length, a.size() - 1);
         for (int i = 0; i < s.length; i++) {
-            Assert.assertEquals(a.get(i).str, s[i]);
+            Assert.assertEquals(a.get(i).str(), s[i]);
         }
     }
 
@@ -55,4 +66,337 @@ public class TestScanner {
         chk("-1", new String[]{"-", "1"});
         chk("[0]", new String[]{"[", "0", "]"});
     }
+
+    @Test
+    public void testBuffer() {
+        String s = "create package a is -- x\n b number := 'x'; /* c */ end;";
+        ArrayList<Token> a = Scanner.scanAll(s);
+        TokenBuffer b = Scanner.scanBuffer(s);
+        Assert.assertEquals(a.size(), b.size());
+        for (int i = 0; i < a.size(); i++) {
+            Assert.assertEquals(a.get(i).toString(), b.token(i).toString());
+            Assert.assertEquals(a.get(i).str(), b.str(i));
+        }
+        TokenBuffer r = b.relevant();
+        int k = 0;
+        for (Token t : a) {
+            if (Scanner.isRelevant(t)) {
+                Assert.assertEquals(t.toString(), r.token(k).toString());
+                k++;
+            }
+        }
+        Assert.assertEquals(k, r.size());
+        TokenBuffer r2 = Scanner.scanRelevant(s);
+        Assert.assertEquals(r.size(), r2.size());
+        for (int i = 0; i < r.size(); i++) {
+            Assert.assertEquals(r.token(i).toString(), r2.token(i).toString());
+            Assert.assertEquals(r.keyword(i), r2.keyword(i));
+        }
+    }
+
+    @Test
+    public void testKeywords() {
+        Assert.assertEquals(Keywords.BEGIN, Keywords.lookup("begin"));
+        Assert.assertEquals(Keywords.BEGIN, Keywords.lookup("BeGiN"));
+        Assert.assertEquals(Keywords.PARALLEL_ENABLE, Keywords.lookup("PARALLEL_ENABLE"));
+        Assert.assertEquals(Keywords.NONE, Keywords.lookup("beginn"));
+        Assert.assertEquals(Keywords.NONE, Keywords.lookup("l_result"));
+        Assert.assertEquals(Keywords.NONE, Keywords.lookup(""));
+        for (int i = 0; i < Keywords.count(); i++) {
+            Assert.assertEquals(i, Keywords.lookup(Keywords.word(i).toUpperCase()));
+        }
+        TokenBuffer b = Scanner.scanBuffer("End \"end\" endx 'end'");
+        Assert.assertEquals(Keywords.END, b.keyword(0));
+        Assert.assertEquals(Keywords.NONE, b.keyword(2));
+        Assert.assertEquals(Keywords.NONE, b.keyword(4));
+        Assert.assertEquals(Keywords.NONE, b.keyword(6));
+        Assert.assertEquals(Keywords.END, b.token(0).kw);
+        Assert.assertEquals(Keywords.END, new Token(TokenType.Ident, "END", 0, 0, 1, 0).kw);
+    }
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testMappedCharBuffer() throws IOException {
+        String src = "begin x := 'gr\u00fc\u00dfe \u20ac'; -- \u00e4\n y := x || \"\u00f6\"; end;";
+        File f = tmp.newFile("a.sql");
+        Charset utf8 = Charset.forName("UTF-8");
+        FileUtils.writeStringToFile(f, src, "UTF-8");
+        CharBuffer cb = Util.mapFile(f.getPath(), utf8);
+        Assert.assertEquals(src, cb.toString());
+        TokenBuffer a = Scanner.scanBuffer(src);
+        TokenBuffer b = Scanner.scanBuffer(cb);
+        Assert.assertEquals(a.size(), b.size());
+        for (int i = 0; i < a.size(); i++) {
+            Assert.assertEquals(a.str(i), b.str(i));
+            Assert.assertEquals(a.keyword(i), b.keyword(i));
+            Assert.assertEquals(a.str(i), b.text(i).toString());
+        }
+        // the text is a view into the buffer, not a copy
+        Assert.assertTrue(b.text(6) instanceof CharBuffer);
+        Assert.assertEquals("'gr\u00fc\u00dfe \u20ac'", b.token(6).text().toString());
+
+        FileUtils.writeByteArrayToFile(f, new byte[]{'x', (byte) 0xc3, '(', 'y'});
+        try {
+            Util.mapFile(f.getPath(), utf8);
+            Assert.fail("malformed input must not be accepted");
+        } catch (CharacterCodingException e) {
+            // expected
+        }
+    }
+
+    static String scanResult(TokenBuffer b) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < b.size(); i++) {
+            sb.append(b.type(i)).append('/').append(b.pos(i)).append('/').append(b.end(i)).append('/')
+                    .append(b.ipos(i)).append('/').append(b.line(i)).append('/').append(b.col(i)).append('/')
+                    .append(b.keyword(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testRescan() {
+        String chars = "ab1 '\n\n-*/;:=()<>.|\"e$";
+        Random rnd = new Random(42);
+        String src = AllocationBenchmark.generatePackage(2);
+        TokenBuffer b = Scanner.scanBuffer(src);
+        int applied = 0;
+        for (int n = 0; n < 2000; n++) {
+            int offset = rnd.nextInt(src.length() + 1);
+            int removed = rnd.nextInt(Math.min(4, src.length() - offset) + 1);
+            StringBuilder ins = new StringBuilder();
+            for (int k = rnd.nextInt(4); k > 0; k--) {
+                ins.append(chars.charAt(rnd.nextInt(chars.length())));
+            }
+            String s2 = src.substring(0, offset) + ins + src.substring(offset + removed);
+            if (s2.contains("q'")) {
+                continue;
+            }
+            TokenBuffer full;
+            try {
+                full = Scanner.scanBuffer(s2);
+            } catch (RuntimeException e) {
+                try {
+                    Scanner.rescan(b, offset, removed, ins);
+                    Assert.fail("rescan must fail like the full scan: " + e);
+                } catch (RuntimeException e2) {
+                    // expected
+                }
+                continue;
+            }
+            TokenBuffer inc = Scanner.rescan(b, offset, removed, ins);
+            Assert.assertEquals(s2, inc.source.toString());
+            Assert.assertEquals(scanResult(full), scanResult(inc));
+            src = s2;
+            b = inc;
+            applied++;
+        }
+        Assert.assertTrue(applied > 500);
+        Assert.assertEquals(scanResult(Scanner.scanBuffer("a := b;\n x := 1;")),
+                scanResult(Scanner.rescan(Scanner.scanBuffer("a := c;\n x := 1;"), 5, 1, "b")));
+    }
+
+    @Test
+    public void testRescanRelevant() {
+        String chars = "ab1 '\n\n-*/;:=()<>.|\"e$";
+        Random rnd = new Random(7);
+        String src = AllocationBenchmark.generatePackage(2);
+        TokenBuffer b = Scanner.scanRelevant(src);
+        int applied = 0;
+        for (int n = 0; n < 1000; n++) {
+            int offset = rnd.nextInt(src.length() + 1);
+            int removed = rnd.nextInt(Math.min(4, src.length() - offset) + 1);
+            StringBuilder ins = new StringBuilder();
+            for (int k = rnd.nextInt(4); k > 0; k--) {
+                ins.append(chars.charAt(rnd.nextInt(chars.length())));
+            }
+            String s2 = src.substring(0, offset) + ins + src.substring(offset + removed);
+            if (s2.contains("q'")) {
+                continue;
+            }
+            TokenBuffer full;
+            try {
+                full = Scanner.scanRelevant(s2);
+            } catch (RuntimeException e) {
+                continue;
+            }
+            TokenBuffer inc = Scanner.rescan(b, offset, removed, ins);
+            Assert.assertFalse(inc.hasTrivia());
+            Assert.assertEquals(scanResult(full), scanResult(inc));
+            src = s2;
+            b = inc;
+            applied++;
+        }
+        Assert.assertTrue(applied > 200);
+        // a buffer from relevant() stays without trivia too
+        TokenBuffer r = Scanner.rescan(Scanner.scanBuffer("a := c;\n x := 1;").relevant(), 5, 1, "b /* c */");
+        Assert.assertEquals(scanResult(Scanner.scanRelevant("a := b /* c */;\n x := 1;")), scanResult(r));
+    }
+
+    @Test
+    public void testLines() {
+        String src = "a\n  'x\ny' /* c\n\n */ q'[\n]' \"q\ni\" -- e\n\r\n  b\n"
+                + AllocationBenchmark.generatePackage(2);
+        TokenBuffer b = Scanner.scanBuffer(src);
+        for (int i = 0; i < b.size(); i++) {
+            int pos = b.pos(i);
+            int line = 1;
+            for (int k = 0; k < pos; k++) {
+                if (src.charAt(k) == '\n') {
+                    line++;
+                }
+            }
+            Assert.assertEquals(line, b.line(i));
+            Assert.assertEquals(pos - (src.lastIndexOf('\n', pos - 1) + 1), b.col(i));
+            Assert.assertEquals(line, b.token(i).line());
+        }
+        Token t = new Token(TokenType.Ident, "x", 10, 10, 3, 4);
+        Assert.assertEquals(3, t.line());
+        Assert.assertEquals(4, t.col());
+    }
+
+    static String newScan(CharSequence s) {
+        StringBuilder b = new StringBuilder();
+        Scanner sc = new Scanner(s);
+        while (sc.start < sc.len) {
+            TokenType tt = sc.scan1(0);
+            b.append(tt).append('/').append(sc.tstart).append('/').append(sc.start).append(' ');
+        }
+        return b.toString();
+    }
+
+    static String outcome(String src, boolean legacy) {
+        try {
+            return legacy ? LegacyScanner.scan(src) : newScan(src);
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    @Test
+    public void testScannerDifferential() {
+        String chars = "aqQ1e.$'\"=<>:!|-/*+()[],;%#_ \n\t\u00e4\u00a0\u2003&@";
+        Random rnd = new Random(7);
+        int n = 0;
+        while (n < 20000) {
+            StringBuilder b = new StringBuilder();
+            for (int k = rnd.nextInt(12); k >= 0; k--) {
+                b.append(chars.charAt(rnd.nextInt(chars.length())));
+            }
+            String src = b.toString();
+            // an unterminated q string does not end in both scanners
+            if (src.contains("q'")) {
+                continue;
+            }
+            Assert.assertEquals(src, outcome(src, true), outcome(src, false));
+            n++;
+        }
+        String src = AllocationBenchmark.generatePackage(5) + " q'[x]' q'(y)' a<=b>=c<>d!=e||f**g..h<<i>>j:=k=>l $$m .5 /* c */ -- x";
+        Assert.assertEquals(LegacyScanner.scan(src), newScan(src));
+    }
+
+    // the tokens or the error, scanned in parts if ex is given
+    static String scanOutcome(String s, boolean trivia, ExecutorService ex) {
+        try {
+            if (ex == null) {
+                return scanResult(trivia ? Scanner.scanBuffer(s) : Scanner.scanRelevant(s));
+            }
+            return scanResult(Scanner.scanParallel(s, trivia, ex, 1));
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    @Test
+    public void testSlashSplit() throws InterruptedException {
+        String src = "create package a is\n x varchar2(10) := 'a\n/\nb';\nend;\n/\n"
+                + "create package b is /* a\n/\n*/ y number; -- c\n/\n"
+                + "  /  \n"
+                + "begin z := q'[x\n/\n]'; w := \"\n/\n\"; end;\n/";
+        int[] splits = SlashSplitter.split(src);
+        Assert.assertEquals(4, splits.length);
+        Assert.assertEquals(src.indexOf("end;\n/") + 5, splits[0]);
+        Assert.assertEquals(src.indexOf("c\n/") + 2, splits[1]);
+        Assert.assertEquals(src.indexOf("  /  ") + 2, splits[2]);
+        Assert.assertEquals(src.lastIndexOf("/"), splits[3]);
+
+        String[] parts = {"create package p is\n", "x := 'a\n/\n'';\n", "/* \n/\n */", "-- x\n",
+            "q'{\n/\n}'", "\"q\n/\n\"", "aq'x';\n", "1..2 ", "\n/\n", "\n  /\n", "end;\n", "y := 1 / 2;\n"};
+        Random rnd = new Random(11);
+        ExecutorService ex = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder b = new StringBuilder();
+                int n = rnd.nextInt(30);
+                for (int j = 0; j < n; j++) {
+                    b.append(parts[rnd.nextInt(parts.length)]);
+                }
+                String s = b.toString();
+                Assert.assertEquals(s, scanOutcome(s, true, null), scanOutcome(s, true, ex));
+                Assert.assertEquals(s, scanOutcome(s, false, null), scanOutcome(s, false, ex));
+            }
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    // the resilient scan covers the whole source with tokens, it equals the
+    // normal scan if that does not fail, and the lines are right
+    static void checkResilient(String s) {
+        TokenBuffer b = Scanner.scanResilient(s, true);
+        LineIndex lines = LineIndex.of(s);
+        int pos = 0;
+        for (int i = 0; i < b.size(); i++) {
+            Assert.assertEquals(s, pos, b.pos(i));
+            Assert.assertEquals(s, lines.line(b.pos(i)), b.line(i));
+            pos = b.end(i);
+        }
+        Assert.assertEquals(s, s.length(), pos);
+        Assert.assertEquals(TokenType.TheEnd, b.type(b.size() - 1));
+        TokenBuffer n;
+        try {
+            n = Scanner.scanBuffer(s);
+        } catch (RuntimeException e) {
+            Assert.assertTrue(s, e instanceof ScanException);
+            return;
+        }
+        Assert.assertEquals(s, scanResult(n), scanResult(b));
+    }
+
+    // no input may hang the scanner: a quadratic scan of the long inputs
+    // would not finish in time
+    @Test(timeout = 60000)
+    public void testResilientFuzz() {
+        String chars = "aq1e.$'\"=<>:!|-/*+()[],;%#_ \n\t\u00e4&@{";
+        Random rnd = new Random(19);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder b = new StringBuilder();
+            int n = rnd.nextInt(30);
+            for (int j = 0; j < n; j++) {
+                b.append(chars.charAt(rnd.nextInt(chars.length())));
+            }
+            checkResilient(b.toString());
+        }
+        String[] patterns = {"q'x", "q'[a\n", "1e", "11111e+", ".5e", "&", "@\n", "'", "\"", "/*", "/* */ --", "$$x"};
+        for (String p : patterns) {
+            StringBuilder b = new StringBuilder();
+            while (b.length() < 200000) {
+                b.append(p);
+            }
+            checkResilient(b.toString());
+        }
+        try {
+            Scanner.scanBuffer("x := q'[abc");
+            Assert.fail("unterminated q string");
+        } catch (ScanException e) {
+            Assert.assertEquals("unexpected end of q string", e.getMessage());
+        }
+        TokenBuffer b = Scanner.scanResilient("a & b := 'x", false);
+        Assert.assertEquals(TokenType.Error, b.type(1));
+        Assert.assertEquals("&", b.str(1));
+        Assert.assertEquals(TokenType.Error, b.type(4));
+        Assert.assertEquals("'x", b.str(4));
+    }
 }